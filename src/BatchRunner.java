@@ -0,0 +1,359 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Command-line entry point that runs a pattern without any user interface
+ * <p>
+ * Nothing here or in the engines touches AWT or Swing, so it runs on headless hosts and starts with a small footprint;
+ * only recording, with {@link FrameExporter}, loads the headless-safe image classes.
+ * While it runs, its {@link Metrics} are published over JMX.
+ * Usage: {@code java BatchRunner [options] pattern}, see {@link #USAGE}.
+ */
+public class BatchRunner {
+    private static final String USAGE = String.join("\n",
+            "Usage: java BatchRunner [options] pattern",
+            "  pattern                  RLE, Macrocell or checkpoint (.jgol) file to start from",
+            "  -e, --engine NAME        sparse (default), tiled, hashlife, parallel[:THREADS], offheap[:THREADS]",
+            "                           (sparse, cells kept outside the heap), distributed:WORKERS (sparse, stepped",
+            "                           by that many local processes), or a finite grid:",
+            "                           torus:WIDTHxHEIGHT[:THREADS] or bounded:WIDTHxHEIGHT[:THREADS]",
+            "  -R, --rule RULE          rule in B/S notation, overriding the one in the pattern file",
+            "  -n, --generations N      stop after N generations (default: no limit)",
+            "  -u, --until CONDITION    stop when the pattern is extinct, stable (stops changing) or periodic",
+            "                           (repeats, possibly moved; sparse, parallel and offheap engines only)",
+            "  -r, --report SECONDS     seconds between progress lines (default 1)",
+            "  -o, --output FILE        write the final state; .jgol for a checkpoint, .mc or .rle for a pattern",
+            "  -a, --record FILE        record every generation to an animated GIF (.gif) or to numbered PNGs",
+            "                           (FILE-000000.png and on for FILE.png); generations are skipped if encoding",
+            "                           falls behind",
+            "      --region X,Y,WxH     rectangle to record, from its bottom-left cell (default: around the pattern)",
+            "      --cell-size PIXELS   pixels a side per recorded cell (default 2)");
+
+    private final LifeEngine engine;
+    private final long generations;
+    private final String until;
+    private final long reportInterval; // nanoseconds
+    private final Metrics metrics = new Metrics();
+    private final FrameExporter recorder; // null unless recording
+
+    // progress since the last report
+    private long lastReportTime, lastReportGen;
+    private long cellsSinceReport = 0;
+
+    /**
+     * Set up a run
+     *
+     * @param engine         engine holding the starting pattern
+     * @param generations    number of generations to run, or Long.MAX_VALUE for no limit
+     * @param until          "extinct", "stable", "periodic" or null
+     * @param reportInterval nanoseconds between progress lines
+     * @param recorder       recorder to hand every generation's changes to, or null
+     */
+    BatchRunner(LifeEngine engine, long generations, String until, long reportInterval, FrameExporter recorder) {
+        this.engine = engine;
+        this.generations = generations;
+        this.until = until;
+        this.reportInterval = reportInterval;
+        this.recorder = recorder;
+        metrics.register();
+    }
+
+    /**
+     * Parse the command line, run, report and save
+     *
+     * @param args see {@link #USAGE}
+     */
+    public static void main(String[] args) {
+        String engineName = "sparse", until = null, output = null, pattern = null, record = null;
+        long[] region = null; // left, bottom, width, height
+        int cellSize = 2;
+        Rule rule = null;
+        long generations = Long.MAX_VALUE;
+        double reportSeconds = 1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-e":
+                    case "--engine":
+                        engineName = args[++i];
+                        break;
+                    case "-R":
+                    case "--rule":
+                        rule = Rule.parse(args[++i]);
+                        break;
+                    case "-n":
+                    case "--generations":
+                        generations = Long.parseLong(args[++i]);
+                        break;
+                    case "-u":
+                    case "--until":
+                        until = args[++i];
+                        if (!until.equals("extinct") && !until.equals("stable") && !until.equals("periodic")) {
+                            throw new IllegalArgumentException("Unknown condition " + until);
+                        }
+                        break;
+                    case "-r":
+                    case "--report":
+                        reportSeconds = Double.parseDouble(args[++i]);
+                        break;
+                    case "-o":
+                    case "--output":
+                        output = args[++i];
+                        break;
+                    case "-a":
+                    case "--record":
+                        record = args[++i];
+                        break;
+                    case "--region":
+                        String[] corner = args[++i].split(",", 3);
+                        String[] size = corner.length == 3 ? corner[2].split("x", 2) : new String[0];
+                        if (size.length != 2) {
+                            throw new IllegalArgumentException("Region must look like X,Y,WIDTHxHEIGHT");
+                        }
+                        region = new long[] { Long.parseLong(corner[0]), Long.parseLong(corner[1]),
+                                Long.parseLong(size[0]), Long.parseLong(size[1]) };
+                        break;
+                    case "--cell-size":
+                        cellSize = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("-") || pattern != null) {
+                            throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                        }
+                        pattern = args[i];
+                }
+            }
+            if (pattern == null) {
+                throw new IllegalArgumentException("No pattern given");
+            }
+            if (generations == Long.MAX_VALUE && until == null) {
+                throw new IllegalArgumentException("Give a number of generations, a stop condition or both");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            LifeEngine engine = createEngine(engineName);
+            if ("periodic".equals(until) && !(engine instanceof Board)) {
+                System.err.println("Only the sparse and parallel engines detect periodic patterns");
+                System.exit(2);
+                return;
+            }
+            long loadStart = System.nanoTime();
+            long cells = PatternIO.read(new File(pattern), engine);
+            if (rule != null) {
+                engine.setRule(rule);
+            }
+            log("loaded %,d cells from %s in %.3f s, generation %,d, rule %s", cells, pattern,
+                    (System.nanoTime() - loadStart) / 1e9, engine.getGenCount(), engine.getRule());
+
+            FrameExporter recorder = null;
+            if (record != null) {
+                if (region == null) {
+                    region = around(engine.getLiveCells());
+                }
+                recorder = new FrameExporter(new File(record), engine.getLiveCells(), engine.getGenCount(),
+                        region[0], region[1], (int) Math.min(region[2], Integer.MAX_VALUE),
+                        (int) Math.min(region[3], Integer.MAX_VALUE), cellSize, e -> { });
+                log("recording %,dx%,d cells at (%d, %d) to %s", region[2], region[3], region[0], region[1], record);
+            }
+
+            new BatchRunner(engine, generations, until, (long) (reportSeconds * 1e9), recorder).run();
+
+            if (recorder != null) {
+                long finishStart = System.nanoTime();
+                recorder.finish(engine.getGenCount());
+                recorder.await();
+                log("recorded %,d frames, %,d generations skipped, finishing in %.3f s", recorder.getFramesWritten(),
+                        recorder.getGenerationsSkipped(), (System.nanoTime() - finishStart) / 1e9);
+            }
+
+            if (output != null) {
+                long saveStart = System.nanoTime();
+                PatternIO.save(new File(output), engine);
+                log("saved to %s in %.3f s", output, (System.nanoTime() - saveStart) / 1e9);
+            }
+            if (engine instanceof DistributedBoard) {
+                ((DistributedBoard) engine).close();
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The rectangle around a pattern with a margin of half its size, and at least 32 cells, on every side, so it has
+     * room to move
+     *
+     * @param cells the live cells
+     * @return left, bottom, width and height
+     * @throws IllegalArgumentException if there are no cells
+     */
+    private static long[] around(CellSet cells) {
+        if (cells.isEmpty()) {
+            throw new IllegalArgumentException("No cells to record around; give a --region");
+        }
+        long[] box = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+        cells.forEach(c -> {
+            long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+            box[0] = Math.min(box[0], x);
+            box[1] = Math.min(box[1], y);
+            box[2] = Math.max(box[2], x);
+            box[3] = Math.max(box[3], y);
+        });
+        long marginX = Math.max((box[2] - box[0] + 1) / 2, 32), marginY = Math.max((box[3] - box[1] + 1) / 2, 32);
+        return new long[] { box[0] - marginX, box[1] - marginY, box[2] - box[0] + 1 + 2 * marginX,
+                box[3] - box[1] + 1 + 2 * marginY };
+    }
+
+    /**
+     * Evolve until the generation limit or the stop condition is reached, printing progress along the way
+     */
+    void run() {
+        long start = System.nanoTime(), startGen = engine.getGenCount();
+        long target = generations == Long.MAX_VALUE ? Long.MAX_VALUE : startGen + generations;
+        lastReportTime = start;
+        lastReportGen = startGen;
+        String reason = "generation limit reached";
+        // HashLife without a condition to check can skip whole blocks of generations at once, and a grid can step
+        // without collecting every generation's changes
+        boolean leap = (engine instanceof HashLife || engine instanceof GridBoard) && until == null && recorder == null;
+        long leapSize = 1;
+        // Board can skip straight to the target once it finds itself on a cycle
+        Board board = engine instanceof Board ? (Board) engine : null;
+        while (engine.getGenCount() < target) {
+            long population = engine.getPopulation();
+            if (leap) {
+                long n = Math.min(leapSize, target - engine.getGenCount());
+                engine.advance(n);
+                cellsSinceReport += population * n;
+                // grow the leap while it stays well inside the report interval
+                if (engine.getComputeTime() < reportInterval / 4 && leapSize < 1L << 40) {
+                    leapSize <<= 1;
+                }
+            } else {
+                CellSet delta = metrics.evolve(engine);
+                cellsSinceReport += population;
+                if (recorder != null) {
+                    recorder.offer(delta, engine.getGenCount());
+                }
+                if ("stable".equals(until) && delta.isEmpty()) {
+                    reason = "pattern is stable";
+                    break;
+                }
+                if (board != null && board.getCycle() != null) {
+                    if ("periodic".equals(until)) {
+                        reason = "pattern is periodic, " + board.getCycle();
+                        break;
+                    }
+                    if (until == null && target != Long.MAX_VALUE && recorder == null) {
+                        log("gen %,d  found %s, skipping ahead", engine.getGenCount(), board.getCycle());
+                        long skipped = target - engine.getGenCount();
+                        board.advance(skipped);
+                        cellsSinceReport += population * skipped;
+                    }
+                }
+            }
+            if ("extinct".equals(until) && engine.getPopulation() == 0) {
+                reason = "pattern is extinct";
+                break;
+            }
+            if (System.nanoTime() - lastReportTime >= reportInterval) {
+                report();
+            }
+        }
+        report();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log("done: %s at generation %,d after %.3f s (%,.1f gen/s), population %,d, peak heap %.1f MB, "
+                + "off-heap %.1f MB", reason, engine.getGenCount(), seconds,
+                (engine.getGenCount() - startGen) / seconds, engine.getPopulation(), peakHeap() / 1e6,
+                metrics.getOffHeapBytes() / 1e6);
+    }
+
+    /**
+     * Print one progress line covering the time since the previous one
+     */
+    private void report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastReportTime, 1) / 1e9;
+        Histogram.Summary latency = metrics.getEvolveLatency();
+        log("gen %,d  %,.1f gen/s  %,.0f cells/s  population %,d  evolve p50 %.3f ms p99 %.3f ms  peak heap %.1f MB",
+                engine.getGenCount(), (engine.getGenCount() - lastReportGen) / seconds, cellsSinceReport / seconds,
+                engine.getPopulation(), latency.getP50() / 1e6, latency.getP99() / 1e6, peakHeap() / 1e6);
+        lastReportTime = now;
+        lastReportGen = engine.getGenCount();
+        cellsSinceReport = 0;
+    }
+
+    /**
+     * Create an empty engine from its command-line name
+     *
+     * @param name sparse, tiled, hashlife or parallel, optionally followed by :THREADS; or torus or bounded followed
+     *             by :WIDTHxHEIGHT and optionally :THREADS; or distributed, optionally followed by :WORKERS
+     * @return the new engine
+     * @throws IOException if worker processes cannot be started
+     */
+    static LifeEngine createEngine(String name) throws IOException {
+        String[] parts = name.split(":", 3);
+        switch (parts[0]) {
+            case "sparse":
+                return new Board();
+            case "tiled":
+                return new TiledBoard();
+            case "hashlife":
+                return new HashLife();
+            case "parallel":
+                return new Board(parts.length > 1 ? Integer.parseInt(parts[1]) : Runtime.getRuntime().availableProcessors());
+            case "offheap":
+                return new Board(parts.length > 1 ? Integer.parseInt(parts[1]) : 1, true);
+            case "distributed":
+                return DistributedBoard.launch(parts.length > 1 ? Integer.parseInt(parts[1]) : 2);
+            case "torus":
+            case "bounded": {
+                String[] size = parts.length > 1 ? parts[1].split("x") : new String[0];
+                if (size.length != 2) {
+                    throw new IllegalArgumentException("Engine " + parts[0] + " needs a size, as in " + parts[0]
+                            + ":1024x1024");
+                }
+                return new GridBoard(Integer.parseInt(size[0]), Integer.parseInt(size[1]), "torus".equals(parts[0]),
+                        parts.length > 2 ? Integer.parseInt(parts[2]) : Runtime.getRuntime().availableProcessors());
+            }
+            default:
+                throw new IllegalArgumentException("Unknown engine " + name);
+        }
+    }
+
+    /**
+     * Highest heap occupancy so far, summed over the heap pools
+     *
+     * @return peak heap use in bytes
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Micro-benchmarks for the engines and the renderer, run with a fixed set of standard workloads
+ * <p>
+ * Modeled on JMH throughput mode with the GC profiler: each benchmark gets warmup iterations, then measurement
+ * iterations on fresh state, and reports ops/s together with allocation rate and bytes allocated per operation.
+ * Usage: {@code java Benchmarks [regex]} runs the benchmarks whose names match the regex.
+ */
+public class Benchmarks {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_TIME = 1_000_000_000L; // nanoseconds
+    private static final int GRID_SIZE = 1024; // side of the torus the grid benchmarks run on
+    private static final int ZOOMED_OUT_LEVEL = 4; // pyramid level drawn by the zoomed-out canvas benchmarks
+
+    /**
+     * Run the benchmarks
+     *
+     * @param args optional regex selecting benchmarks by name
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        Pattern filter = Pattern.compile(args.length > 0 ? args[0] : ".*");
+        ArrayList<Benchmark> benchmarks = new ArrayList<>();
+        String[] workloads = { "rPentomino", "acorn", "gosperGun", "soup1000", "stillLifeField" };
+        for (String workload : workloads) {
+            benchmarks.add(new Benchmark("Board.evolve:" + workload, () -> {
+                Board board = new Board();
+                load(board, workload);
+                return new Invocation(board::evolve);
+            }));
+            benchmarks.add(new Benchmark("TiledBoard.evolve:" + workload, () -> {
+                TiledBoard board = new TiledBoard();
+                load(board, workload);
+                return new Invocation(board::evolve);
+            }));
+            benchmarks.add(new Benchmark("TiledBoard.evolveAndSnapshot:" + workload, () -> {
+                // as the simulation thread does while the display keeps up: every generation is handed out
+                TiledBoard board = new TiledBoard();
+                load(board, workload);
+                return new Invocation(() -> {
+                    board.evolve();
+                    board.copyLiveCells();
+                });
+            }));
+            benchmarks.add(new Benchmark("Board.evolveAndSnapshot:" + workload, () -> {
+                Board board = new Board();
+                load(board, workload);
+                return new Invocation(() -> {
+                    board.evolve();
+                    board.copyLiveCells();
+                });
+            }));
+            benchmarks.add(new Benchmark("GridBoard.evolve:" + workload, () -> {
+                GridBoard board = new GridBoard(GRID_SIZE, GRID_SIZE, true);
+                load(board, workload);
+                return new Invocation(board::evolve);
+            }));
+            benchmarks.add(new Benchmark("Board.clear:" + workload, () -> {
+                Board board = new Board();
+                // refilling the board is not timed
+                return new Invocation(board::clear, () -> load(board, workload));
+            }));
+            benchmarks.add(new Benchmark("CellCanvas.updateTransform:" + workload, () -> {
+                CellCanvas canvas = canvas(workload);
+                int[] direction = { Consts.T_UP };
+                return new Invocation(() -> {
+                    canvas.updateTransform(direction[0]);
+                    direction[0] = direction[0] == Consts.T_UP ? Consts.T_DOWN : Consts.T_UP;
+                });
+            }));
+            benchmarks.add(new Benchmark("CellCanvas.refresh:" + workload, () -> {
+                Board board = new Board();
+                load(board, workload);
+                CellSet delta = board.evolve();
+                CellCanvas canvas = canvas(workload);
+                Snapshot next = new Snapshot(tiles(board.getLiveCells()), tiles(delta), 1, 0, 0, 0, board.getRule(),
+                        null, null);
+                return new Invocation(() -> canvas.show(next));
+            }));
+            benchmarks.add(new Benchmark("CellCanvas.refreshZoomedOut:" + workload, () -> {
+                Board board = new Board();
+                load(board, workload);
+                DensityPyramid pyramid = new DensityPyramid(board.getLiveCells());
+                CellSet delta = board.evolve();
+                pyramid.update(delta, c -> board.getCellState(Coordinate.fromKey(c)));
+                CellCanvas canvas = canvas(workload);
+                canvas.updateLevel(ZOOMED_OUT_LEVEL);
+                Snapshot next = new Snapshot(tiles(board.getLiveCells()), tiles(delta), 1, 0, 0, 0, board.getRule(),
+                        null, pyramid.getLevel(ZOOMED_OUT_LEVEL));
+                return new Invocation(() -> canvas.show(next));
+            }));
+        }
+        benchmarks.add(new Benchmark("GridBoard.advance:torus16384", () -> {
+            // a soup in one corner; stepping costs the same wherever the cells are
+            GridBoard board = new GridBoard(16384, 16384, true, Runtime.getRuntime().availableProcessors());
+            long[] soup = workload("soup1000");
+            for (int i = 0; i < 16; i++) {
+                for (int j = 0; j < 16; j++) {
+                    for (long c : soup) {
+                        board.setCellState(new Coordinate(Coordinate.unpackX(c) + 500 + i * 1000L,
+                                Coordinate.unpackY(c) + 500 + j * 1000L), true);
+                    }
+                }
+            }
+            return new Invocation(() -> board.advance(1));
+        }));
+
+        System.out.printf("%-60s %5s %14s %12s  %s%n", "Benchmark", "Cnt", "Score", "Error", "Units");
+        for (Benchmark b : benchmarks) {
+            if (filter.matcher(b.name).find()) {
+                b.run();
+            }
+        }
+    }
+
+    /**
+     * Fill a board with a standard workload
+     *
+     * @param board    the board to fill
+     * @param workload name of the workload
+     */
+    static void load(LifeEngine board, String workload) {
+        for (long c : workload(workload)) {
+            board.setCellState(Coordinate.fromKey(c), true);
+        }
+    }
+
+    /**
+     * Build the cells of a standard workload
+     *
+     * @param workload name of the workload
+     * @return packed coordinates of the live cells
+     */
+    static long[] workload(String workload) {
+        switch (workload) {
+            case "rPentomino":
+                return picture(".OO", "OO.", ".O.");
+            case "acorn":
+                return picture(".O.....", "...O...", "OO..OOO");
+            case "gosperGun":
+                return picture(
+                        "........................O...........",
+                        "......................O.O...........",
+                        "............OO......OO............OO",
+                        "...........O...O....OO............OO",
+                        "OO........O.....O...OO..............",
+                        "OO........O...O.OO....O.O...........",
+                        "..........O.....O.......O...........",
+                        "...........O...O....................",
+                        "............OO......................");
+            case "soup1000": {
+                // 1000x1000 at 50% density, with a fixed seed so every run sees the same soup
+                Random random = new Random(1);
+                CellSet cells = new CellSet();
+                for (int x = 0; x < 1000; x++) {
+                    for (int y = 0; y < 1000; y++) {
+                        if (random.nextBoolean()) {
+                            cells.add(Coordinate.pack(x - 500, y - 500));
+                        }
+                    }
+                }
+                return cells.toArray();
+            }
+            case "stillLifeField": {
+                // 250x250 blocks, 4 cells apart: a million-cell area that never changes
+                CellSet cells = new CellSet();
+                for (int i = 0; i < 250; i++) {
+                    for (int j = 0; j < 250; j++) {
+                        for (int k = 0; k < 4; k++) {
+                            cells.add(Coordinate.pack(i * 4 - 500 + (k & 1), j * 4 - 500 + (k >> 1)));
+                        }
+                    }
+                }
+                return cells.toArray();
+            }
+            default:
+                throw new IllegalArgumentException("Unknown workload " + workload);
+        }
+    }
+
+    /**
+     * Convert a picture of a pattern into cells, 'O' alive, top row at y = 0 and rows going down
+     *
+     * @param rows the rows of the picture
+     * @return packed coordinates of the live cells
+     */
+    private static long[] picture(String... rows) {
+        CellSet cells = new CellSet();
+        for (int r = 0; r < rows.length; r++) {
+            for (int x = 0; x < rows[r].length(); x++) {
+                if (rows[r].charAt(x) == 'O') {
+                    cells.add(Coordinate.pack(x, -r));
+                }
+            }
+        }
+        return cells.toArray();
+    }
+
+    /**
+     * A canvas the size of the default window showing a workload
+     */
+    private static CellCanvas canvas(String workload) {
+        Board board = new Board();
+        load(board, workload);
+        CellCanvas canvas = new CellCanvas(new Simulation(new Board()));
+        canvas.setSize(Consts.STARTING_SIZE);
+        canvas.updateCellSize(Consts.ZOOM_MIN);
+        canvas.show(new Snapshot(tiles(board.getLiveCells()), tiles(board.getLiveCells()), 0, 0, 0, 0,
+                board.getRule(), null, null));
+        return canvas;
+    }
+
+    /**
+     * Bucket cells into tiles, as the simulation does for the snapshots it hands the canvas
+     */
+    private static CellSet tiles(CellSet cells) {
+        TileIndex index = new TileIndex();
+        index.addAll(cells);
+        return index.view();
+    }
+
+    /**
+     * The operation under test, with optional untimed preparation before every call
+     */
+    private static class Invocation {
+        final Runnable op;
+        final Runnable reset;
+
+        Invocation(Runnable op) {
+            this(op, null);
+        }
+
+        Invocation(Runnable op, Runnable reset) {
+            this.op = op;
+            this.reset = reset;
+        }
+    }
+
+    /**
+     * A named benchmark; every iteration starts from fresh state made by the setup
+     */
+    private static class Benchmark {
+        final String name;
+        final Supplier<Invocation> setup;
+
+        Benchmark(String name, Supplier<Invocation> setup) {
+            this.name = name;
+            this.setup = setup;
+        }
+
+        /**
+         * Warm up, measure and print the results
+         */
+        void run() {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                iteration();
+            }
+            double[] opsPerSecond = new double[MEASUREMENT_ITERATIONS];
+            double[] bytesPerOp = new double[MEASUREMENT_ITERATIONS];
+            double[] bytesPerSecond = new double[MEASUREMENT_ITERATIONS];
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+                double[] result = iteration();
+                opsPerSecond[i] = result[0] / result[1] * 1e9;
+                bytesPerOp[i] = result[2] / result[0];
+                bytesPerSecond[i] = result[2] / result[1] * 1e9;
+            }
+            print(name, opsPerSecond, "ops/s");
+            print(name + ":gc.alloc.rate", scale(bytesPerSecond, 1.0 / (1 << 20)), "MB/sec");
+            print(name + ":gc.alloc.rate.norm", bytesPerOp, "B/op");
+        }
+
+        /**
+         * Run the operation for one iteration
+         *
+         * @return operation count, timed nanoseconds and allocated bytes
+         */
+        private double[] iteration() {
+            Invocation invocation = setup.get();
+            long ops = 0, time = 0, bytes = 0;
+            if (invocation.reset == null) {
+                long start = System.nanoTime(), startBytes = Metrics.allocatedBytes();
+                do {
+                    invocation.op.run();
+                    ops++;
+                    time = System.nanoTime() - start;
+                } while (time < ITERATION_TIME);
+                bytes = Metrics.allocatedBytes() - startBytes;
+            } else {
+                // time each call separately so that the preparation is left out
+                long deadline = System.nanoTime() + ITERATION_TIME;
+                do {
+                    invocation.reset.run();
+                    long start = System.nanoTime(), startBytes = Metrics.allocatedBytes();
+                    invocation.op.run();
+                    time += System.nanoTime() - start;
+                    bytes += Metrics.allocatedBytes() - startBytes;
+                    ops++;
+                } while (System.nanoTime() < deadline);
+            }
+            return new double[] { ops, time, bytes };
+        }
+
+        private static double[] scale(double[] values, double factor) {
+            double[] scaled = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                scaled[i] = values[i] * factor;
+            }
+            return scaled;
+        }
+
+        /**
+         * Print the mean of a measurement with the half-width of its 99.9% confidence interval
+         */
+        private static void print(String label, double[] values, String unit) {
+            double mean = 0;
+            for (double v : values) {
+                mean += v;
+            }
+            mean /= values.length;
+            double variance = 0;
+            for (double v : values) {
+                variance += (v - mean) * (v - mean);
+            }
+            double stddev = Math.sqrt(variance / (values.length - 1));
+            // Student's t for 99.9% with 4 degrees of freedom, matching MEASUREMENT_ITERATIONS
+            double error = 8.610 * stddev / Math.sqrt(values.length);
+            System.out.printf("%-60s %5d %14.3f +- %10.3f  %s%n", label, values.length, mean, error, unit);
+        }
+    }
+}
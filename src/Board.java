@@ -1,19 +1,65 @@
-import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A grid of cells, handles game logic
+ * <p>
+ * The board remembers which cells changed in the last two generations. A cell whose neighborhood is the same as one
+ * generation ago cannot change, and one whose neighborhood is the same as two generations ago repeats its last change,
+ * so only cells next to a difference are evaluated: settled ash and blinkers cost nothing until activity reaches them.
+ * <p>
+ * It also keeps a hash of its live cells and recognizes a return to an earlier, possibly translated, state; from then
+ * on {@link #advance(long)} skips whole periods by moving the cells instead of evolving them.
+ * <p>
+ * The live cells can be kept off the heap in an {@link OffHeapCellSet}, for populations the heap cannot hold or
+ * would spend long collections scanning. The working sets of each generation stay on the heap.
  */
-public class Board {
-    private HashSet<Coordinate> liveCells;
-    private int genCount;
+public class Board implements LifeEngine {
+    private static final int PARALLEL_THRESHOLD = 4096; // below this population, splitting costs more than it saves
+    private static final int ACTIVITY_RATIO = 4; // evaluate every cell once more than one in this many is active
+    static final int SELF = 1 << Rule.bit(0, 0); // a cell's own bit in its neighborhood mask
+
+    private CellSet liveCells;
+    private final boolean offHeap; // liveCells is an OffHeapCellSet
+    private final NeighborTable neighbors = new NeighborTable(); // reused by every evolve() call
+    private long genCount;
     private long computeTime = 0;
+    private long cpuTime = 0;
+    private ForkJoinPool pool; // null when evolving sequentially
+    private Rule rule = Rule.CONWAY;
+    // cells the last evolve() changed plus any edited since, or null if unknown
+    private CellSet lastDelta;
+    // the cells the evolve() before that changed, or null unless no edits were made since it
+    private CellSet previousDelta;
+    private boolean lastDeltaEdited; // the last delta includes edits, so it cannot become the previous one
+    private final CycleDetector cycles = new CycleDetector();
 
     /**
-     * Initialize a blank board
+     * Initialize a blank board that evolves on the calling thread
      */
     public Board() {
-        liveCells = new HashSet<>();
+        this(1);
+    }
+
+    /**
+     * Initialize a blank board
+     *
+     * @param parallelism number of worker threads used by evolve(); 1 evolves on the calling thread
+     */
+    public Board(int parallelism) {
+        this(parallelism, false);
+    }
+
+    /**
+     * Initialize a blank board, optionally storing its live cells off the heap
+     *
+     * @param parallelism number of worker threads used by evolve(); 1 evolves on the calling thread
+     * @param offHeap     true to keep the live cells in native memory
+     */
+    public Board(int parallelism, boolean offHeap) {
+        this.offHeap = offHeap;
+        liveCells = newLiveCells();
         genCount = 0;
+        setParallelism(parallelism);
     }
 
     /**
@@ -22,8 +68,9 @@ public class Board {
      * @param c coordinates of the cell
      * @return current state of the cell
      */
+    @Override
     public boolean getCellState(Coordinate c) {
-        return liveCells.contains(c);
+        return liveCells.contains(c.key());
     }
 
     /**
@@ -32,163 +79,406 @@ public class Board {
      * @param c     coordinates of the cell
      * @param state desired state of the cell
      */
+    @Override
     public void setCellState(Coordinate c, boolean state) {
-        if (state) {
-            liveCells.add(c);
-        } else {
-            liveCells.remove(c);
+        if (state ? liveCells.add(c.key()) : liveCells.remove(c.key())) {
+            edited(c.key());
+            if (state) {
+                cycles.born(c.key());
+            } else {
+                cycles.died(c.key());
+            }
+            cycles.forget();
         }
     }
 
     /**
-     * Flip the cell's state
+     * Bring a batch of cells to life, as when loading a pattern
      *
-     * @param c coordinates of the cell
+     * @param keys  packed coordinates of the cells
+     * @param count number of keys to take from the start of the array
      */
-    public void toggleState(Coordinate c) {
-        setCellState(c, !getCellState(c));
+    @Override
+    public void addCells(long[] keys, int count) {
+        liveCells.addAll(keys, count);
+        lastDelta = null;
+        previousDelta = null;
+        cycles.invalidate();
     }
 
     /**
      * Getter for currently living cells
      *
-     * @return HashSet of live cells
+     * @return CellSet of live cells
      */
-    public HashSet<Coordinate> getLiveCells() {
+    @Override
+    public CellSet getLiveCells() {
         return liveCells;
     }
 
+    /**
+     * Getter for the number of live cells
+     *
+     * @return current population
+     */
+    @Override
+    public long getPopulation() {
+        return liveCells.size();
+    }
+
     /**
      * Getter for generation count
      *
      * @return current generation count
      */
-    public int getGenCount() {
+    @Override
+    public long getGenCount() {
         return genCount;
     }
 
+    /**
+     * Setter for generation count
+     *
+     * @param genCount new generation count
+     */
+    @Override
+    public void setGenCount(long genCount) {
+        this.genCount = genCount;
+    }
+
     /**
      * Getter for compute time
      *
-     * @return last compute time in nanoseconds
+     * @return wall-clock time of the last evolve() in nanoseconds
      */
+    @Override
     public long getComputeTime() {
         return computeTime;
     }
 
     /**
-     * Apply the four rules to each cell, update generation count
+     * Getter for CPU time
+     *
+     * @return CPU time of the last evolve() summed over all threads, in nanoseconds
+     */
+    @Override
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * Getter for the rule
      *
-     * @return HashSet of cells whose status has changed
+     * @return the rule the board evolves by
      */
-    public HashSet<Coordinate> evolve() {
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Setter for the rule
+     *
+     * @param rule the rule to evolve by from now on
+     */
+    @Override
+    public void setRule(Rule rule) {
+        this.rule = rule;
+        // the neighborhoods that decided the last changes may now lead elsewhere
+        lastDelta = null;
+        previousDelta = null;
+        cycles.forget();
+    }
+
+    /**
+     * Getter for the cycle the board is on
+     *
+     * @return the period and displacement found, or null if no return to an earlier state has been seen within the
+     * last {@value CycleDetector#HISTORY} generations since the board was last edited
+     */
+    public Cycle getCycle() {
+        return cycles.getCycle();
+    }
+
+    /**
+     * Check where the live cells are stored
+     *
+     * @return true if they are kept off the heap
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Change the number of threads used by evolve()
+     *
+     * @param parallelism number of worker threads; 1 evolves on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Getter for the number of threads used by evolve()
+     *
+     * @return number of worker threads
+     */
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Apply the rule to each cell, update generation count
+     *
+     * @return CellSet of cells whose status has changed
+     */
+    @Override
+    public CellSet evolve() {
         long startTime = System.nanoTime();
+        long cpuStart = PartitionedStep.threadCpuTime();
         // cannot change the set that is being iterated over while iterating, so store delta separately
-        HashSet<Coordinate> births = new HashSet<>(); // all cells to be born
-        HashSet<Coordinate> deaths = new HashSet<>(); // all cells to be killed
-        HashSet<Coordinate> checked = new HashSet<>(); // keep track of already-checked cells
-        // since a cell can only be born if it has live neighbors, iterating around live cells is sufficient to catch births
-        for (Coordinate c : liveCells) {
-            for (int i = -1; i <= 1; i++) {
-                for (int j = -1; j <= 1; j++) {
-                    Coordinate test = new Coordinate(c.x() + i, c.y() + j);
-                    if (checked.add(test)) { // if test is already (a member of) checked, skip
-                        // to be born if...
-                        if (applyRules(test)) { // ...will be alive...
-                            if (!getCellState(test)) { // ...and is currently dead
-                                births.add(test);
-                            }
-                        // to be killed if...
-                        } else { // ...will be dead...
-                            if (getCellState(test)) { // ...and is currently alive
-                                deaths.add(test);
-                            }
-                        }
-                    }
-                }
+        CellSet births = new CellSet(); // all cells to be born
+        CellSet deaths = new CellSet(); // all cells to be killed
+        long workerCpuTime = 0;
+        if (!findActiveChanges(births, deaths)) {
+            if (pool != null && liveCells.size() >= PARALLEL_THRESHOLD) {
+                PartitionedStep step = new PartitionedStep(liveCells, rule);
+                workerCpuTime = step.run(pool);
+                step.merge(births, deaths);
+            } else {
+                findChanges(births, deaths);
             }
         }
+        if (cycles.isValid()) {
+            births.forEach(cycles::born);
+            deaths.forEach(cycles::died);
+        }
         // apply delta
         liveCells.addAll(births);
         liveCells.removeAll(deaths);
         genCount++;
+        if (!cycles.isValid()) {
+            cycles.recompute(liveCells);
+        }
+        cycles.record(genCount, liveCells);
         births.addAll(deaths); // overall delta to return
+        previousDelta = lastDeltaEdited ? null : lastDelta;
+        lastDelta = births.copy();
+        lastDeltaEdited = false;
         computeTime = System.nanoTime() - startTime;
+        cpuTime = PartitionedStep.threadCpuTime() - cpuStart + workerCpuTime;
         return births;
     }
 
     /**
-     * Kill all live cells and reset counter
+     * Advance any number of generations, skipping whole periods at once when the board is on a known cycle
+     * <p>
+     * Until a cycle is found this evolves one generation at a time, so it also finds cycles as it goes.
      *
-     * @return HashSet of cells whose status has changed
+     * @param generations number of generations to advance
      */
-    public HashSet<Coordinate> clear() {
-        HashSet<Coordinate> delta = deepcopy(liveCells);
-        liveCells.clear();
-        genCount = 0;
-        return delta;
+    @Override
+    public void advance(long generations) {
+        if (generations < 0) {
+            throw new IllegalArgumentException("Cannot advance a negative number of generations");
+        }
+        long target = genCount + generations;
+        while (genCount < target) {
+            Cycle cycle = cycles.getCycle();
+            if (cycle != null && target - genCount >= cycle.getPeriod()) {
+                long startTime = System.nanoTime();
+                long periods = (target - genCount) / cycle.getPeriod();
+                if (cycle.isMoving()) {
+                    long dx = periods * cycle.getDx(), dy = periods * cycle.getDy();
+                    CellSet moved = newLiveCells();
+                    moved.ensureCapacity(liveCells.size());
+                    liveCells.forEach(c -> moved.add(Coordinate.pack(Coordinate.unpackX(c) + dx,
+                            Coordinate.unpackY(c) + dy)));
+                    freeLiveCells();
+                    liveCells = moved;
+                    // the recent changes happened elsewhere
+                    lastDelta = null;
+                    previousDelta = null;
+                }
+                genCount += periods * cycle.getPeriod();
+                cycles.skipped(liveCells, cycle.isMoving());
+                computeTime = System.nanoTime() - startTime;
+            } else {
+                evolve();
+            }
+        }
     }
 
     /**
-     * Apply rules to a single cell
-     *
-     * @param c the coordinates of the cell
-     */
-    private boolean applyRules(Coordinate c) {
-        int count = countLiveNeighbors(c);
-        if (getCellState(c)) { // cell is alive
-            switch (count) {
-                // death by solitude
-                case 0:
-                    return false;
-                case 1:
-                    return false;
-                // still alive
-                case 2:
-                    return true;
-                case 3:
-                    return true;
-                // more than 3 neighbors, death by overpopulation
-                default:
-                    return false;
+     * Find every cell that changes in the next generation, on the calling thread
+     *
+     * @param births receives the cells to be born
+     * @param deaths receives the cells to be killed
+     */
+    private void findChanges(CellSet births, CellSet deaths) {
+        // every live cell sets its own bit in the neighborhood mask of each of the nine cells around and including it,
+        // so each entry ends up holding that cell's neighborhood as Rule.next() expects it
+        // since a cell can only be born if it has live neighbors, these entries are the only candidates for change
+        neighbors.reset(liveCells.size() * 4);
+        liveCells.forEach(c -> {
+            long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    // seen from the cell at (x + i, y + j), this one sits at offset (-i, -j)
+                    neighbors.add(Coordinate.pack(x + i, y + j), 1 << Rule.bit(-i, -j));
+                }
+            }
+        });
+        for (int slot = 0; slot < neighbors.capacity(); slot++) {
+            int mask = neighbors.valueAt(slot);
+            if (mask != 0) {
+                boolean alive = (mask & SELF) != 0;
+                if (rule.next(mask) != alive) {
+                    (alive ? deaths : births).add(neighbors.keyAt(slot));
+                }
             }
         }
-        // cell is dead
-        return count == 3; // revive dead cell if surrounded by exactly 3 neighbors
     }
 
     /**
-     * Count the number of live neighbors a cell has
+     * Find every cell that changes in the next generation by evaluating only the cells near recent changes
      *
-     * @param c the coordinates of the cell
-     * @return the number of live cells around that cell
+     * @param births receives the cells to be born
+     * @param deaths receives the cells to be killed
+     * @return false, leaving births and deaths empty, if the recent changes are unknown or too many to be worth it
      */
-    private int countLiveNeighbors(Coordinate c) {
-        int ct = 0;
-        // Check every cell around given coordinate
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                if (getCellState(new Coordinate(c.x() + i, c.y() + j))) {
-                    ct++;
+    private boolean findActiveChanges(CellSet births, CellSet deaths) {
+        if (lastDelta == null) {
+            return false;
+        }
+        // the cells whose state differs from the one the generation being repeated read: with one generation of
+        // history every cell away from these keeps its state, with two it makes the same change as last time
+        CellSet differences = previousDelta == null ? lastDelta : symmetricDifference(lastDelta, previousDelta);
+        if ((long) differences.size() * ACTIVITY_RATIO > liveCells.size()) {
+            return false;
+        }
+        neighbors.reset(differences.size() * 9);
+        differences.forEach(c -> {
+            long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    neighbors.add(Coordinate.pack(x + i, y + j), 1);
+                }
+            }
+        });
+        for (int slot = 0; slot < neighbors.capacity(); slot++) {
+            if (neighbors.valueAt(slot) != 0) {
+                long c = neighbors.keyAt(slot);
+                int mask = neighborhood(c);
+                boolean alive = (mask & SELF) != 0;
+                if (rule.next(mask) != alive) {
+                    (alive ? deaths : births).add(c);
                 }
             }
         }
-        if (getCellState(c)) {// don't count the cell itself as a neighbor
-            ct--;
+        if (previousDelta != null) {
+            // period-2 areas: undo whatever the last generation did
+            lastDelta.forEach(c -> {
+                if (neighbors.get(c) == 0) {
+                    (liveCells.contains(c) ? deaths : births).add(c);
+                }
+            });
         }
-        return ct;
+        return true;
     }
 
     /**
-     * Make a deep copy of a HashSet
+     * Look up the neighborhood of a cell
      *
-     * @return a copy of the original HashSet
+     * @param c packed coordinates of the cell
+     * @return the neighborhood mask as Rule.next() expects it
+     */
+    private int neighborhood(long c) {
+        long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+        int mask = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (liveCells.contains(Coordinate.pack(x + dx, y + dy))) {
+                    mask |= 1 << Rule.bit(dx, dy);
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Cells in exactly one of two sets
+     */
+    private static CellSet symmetricDifference(CellSet a, CellSet b) {
+        CellSet result = new CellSet();
+        a.forEach(c -> {
+            if (!b.contains(c)) {
+                result.add(c);
+            }
+        });
+        b.forEach(c -> {
+            if (!a.contains(c)) {
+                result.add(c);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Record a cell changed from outside evolve()
+     *
+     * @param c packed coordinates of the cell
+     */
+    private void edited(long c) {
+        if (lastDelta == null) {
+            return;
+        }
+        // the next generation has to look at the cells around the edit; the one after cannot repeat a change
+        // made before it, so the two-generation history restarts. An edit undoing a change is still added: the
+        // cell's neighbors are as they were, so it would make that change again
+        lastDelta.add(c);
+        previousDelta = null;
+        lastDeltaEdited = true;
+    }
+
+    /**
+     * Kill all live cells and reset counter
+     *
+     * @return CellSet of cells whose status has changed
+     */
+    @Override
+    public CellSet clear() {
+        // the old set is exactly the delta, so hand it over instead of copying; an off-heap one is copied to the heap
+        // and its memory freed at once rather than left for the collector
+        CellSet delta = offHeap ? liveCells.copy() : liveCells;
+        freeLiveCells();
+        liveCells = newLiveCells();
+        genCount = 0;
+        lastDelta = null;
+        previousDelta = null;
+        cycles.reset();
+        return delta;
+    }
+
+    /**
+     * Create an empty set for the live cells, where this board keeps them
+     */
+    private CellSet newLiveCells() {
+        return offHeap ? new OffHeapCellSet() : new CellSet();
+    }
+
+    /**
+     * Free the memory of a live cell set that is being replaced, if it is off the heap
      */
-    private static HashSet<Coordinate> deepcopy(HashSet<Coordinate> source) {
-        HashSet<Coordinate> copy = new HashSet<>();
-        for (Coordinate c : source) {
-            copy.add(new Coordinate(c.x(), c.y()));
+    private void freeLiveCells() {
+        if (offHeap) {
+            ((OffHeapCellSet) liveCells).close();
         }
-        return copy;
     }
 }
@@ -0,0 +1,364 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Display snapshots of a simulation by painting cells into an off-screen image
+ * <p>
+ * The bottom-left cell on screen is (transformX, transformY); y increases upwards as on the board. Only cells that
+ * changed are repainted after a generation, and a full redraw touches at most the visible cells. Both ask the
+ * snapshot's sets for the cells on screen only, which the simulation's tile views answer without looking at the rest
+ * of the board.
+ * <p>
+ * Zoomed out past one pixel per cell, every pixel shows a block of 2^level by 2^level cells, shaded by its
+ * population as counted in the simulation's {@link DensityPyramid}, so drawing takes time in proportion to the
+ * pixels rather than the live cells.
+ */
+public class CellCanvas extends JComponent {
+    private static final int[] SHADES = shades(256); // colors of zoomed-out pixels, from one live cell to full
+
+    private final Simulation simulation;
+    private Snapshot snapshot; // the snapshot on screen
+    private int cellSize;
+    private int level = 0; // each pixel shows 2^level cells a side when above 0, and cellSize is 1
+    private DensityMap density; // populations of the blocks on screen when zoomed out, otherwise null
+    private long transformX, transformY;
+    private BufferedImage image;
+    private int[] pixels; // backing array of image, written directly
+
+    /**
+     * Create a new canvas showing a simulation
+     *
+     * @param simulation the simulation to display; clicks toggle its cells
+     */
+    public CellCanvas(Simulation simulation) {
+        this.simulation = simulation;
+        snapshot = new Snapshot(new CellSet(), new CellSet(), 0, 0, 0, 0, Rule.CONWAY, null, null);
+        cellSize = Consts.INITIAL_CELL_SIZE;
+        setOpaque(true);
+        // click to toggle a cell
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (level > 0) {
+                    return; // too small to pick out a cell
+                }
+                long x = transformX + e.getX() / cellSize;
+                long y = transformY + (getHeight() - 1 - e.getY()) / cellSize;
+                // the change shows up with the next snapshot
+                simulation.toggleState(new Coordinate(x, y));
+            }
+        });
+        // the image has to follow the size of the component
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                redraw();
+            }
+        });
+        updateTransform(Consts.T_ZERO);
+    }
+
+    /**
+     * Display a newer snapshot, repainting the cells that changed since the one on screen
+     *
+     * @param next the snapshot to display
+     */
+    public void show(Snapshot next) {
+        snapshot = next;
+        if (level > 0) {
+            density = densityOf(next, level);
+        }
+        refresh(next.getDelta());
+    }
+
+    /**
+     * Change the size of all cells
+     *
+     * @param size new size to be set, in pixels
+     */
+    public void updateCellSize(int size) {
+        if (level > 0) {
+            level = 0;
+            density = null;
+            simulation.setDensityLevel(0);
+        }
+        cellSize = size;
+        redraw();
+    }
+
+    /**
+     * Zoom out past one pixel per cell
+     *
+     * @param level each pixel shows a block of 2^level cells a side, from 1 to DensityPyramid.MAX_LEVEL
+     */
+    public void updateLevel(int level) {
+        if (level == this.level) {
+            return;
+        }
+        // until a snapshot brings the level, count the cells on screen now
+        density = densityOf(snapshot, level);
+        this.level = level;
+        cellSize = 1;
+        // pixels line up with the blocks of the pyramid
+        transformX = transformX >> level << level;
+        transformY = transformY >> level << level;
+        simulation.setDensityLevel(level);
+        redraw();
+    }
+
+    /**
+     * Start recording the cells on screen, each as large as it is shown, to a file
+     *
+     * @param file    an animated GIF if the name ends in .gif, otherwise the name for a numbered series of PNGs
+     * @param onError called on the encoding thread if the file cannot be written
+     * @return false if zoomed out past one pixel per cell, which cannot be recorded
+     */
+    public boolean record(File file, Consumer<IOException> onError) {
+        if (level > 0 || getWidth() <= 0 || getHeight() <= 0) {
+            return false;
+        }
+        simulation.startRecording(file, transformX, transformY, (int) visibleColumns(), (int) visibleRows(), cellSize,
+                onError);
+        return true;
+    }
+
+    /**
+     * Repaint cells whose state has changed
+     *
+     * @param delta CellSet of changed coordinates
+     */
+    private void refresh(CellSet delta) {
+        if (image == null) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        long columns = visibleColumns(), rows = visibleRows();
+        if (level > 0) {
+            if (delta.size() >= Math.min(density.size(), columns * rows)) {
+                redraw(); // several changes per block on screen: repainting them all is cheaper
+                return;
+            }
+            // transformX and transformY are multiples of the block size here
+            delta.forEachIn(transformX, transformY, columns << level, rows << level, c -> {
+                long bx = Coordinate.unpackX(c) >> level, by = Coordinate.unpackY(c) >> level;
+                paintBlock(bx, by, density.get(Coordinate.pack(bx, by)));
+            });
+        } else {
+            delta.forEachIn(transformX, transformY, columns, rows,
+                    c -> paintCell(Coordinate.unpackX(c), Coordinate.unpackY(c)));
+        }
+        simulation.getMetrics().recordRefresh(System.nanoTime() - startTime);
+        repaint();
+    }
+
+    /**
+     * Stage the parameters for the transformations on the board
+     *
+     * @param transform the id of the type of transportation that is to be performed
+     */
+    public void updateTransform(int transform) {
+        // scroll by the same number of pixels at every zoom level
+        long increment = (long) Consts.SCROLL_INCREMENT << level;
+        switch (transform) {
+            case Consts.T_UP:
+                transformY += increment;
+                break;
+            case Consts.T_DOWN:
+                transformY -= increment;
+                break;
+            case Consts.T_RIGHT:
+                transformX += increment;
+                break;
+            case Consts.T_LEFT:
+                transformX -= increment;
+                break;
+            case Consts.T_ZERO:
+                transformX = 0;
+                transformY = 0;
+                break;
+        }
+        // repopulate board using new transformation
+        redraw();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (image == null || image.getWidth() != getWidth() || image.getHeight() != getHeight()) {
+            redraw();
+        }
+        if (image != null) {
+            g.drawImage(image, 0, 0, null);
+        }
+    }
+
+    /**
+     * Repaint every visible cell into a fresh image
+     */
+    private void redraw() {
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        if (image == null || image.getWidth() != getWidth() || image.getHeight() != getHeight()) {
+            image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        Graphics2D g = image.createGraphics();
+        g.setColor(Consts.DEAD_COLOR);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        if (cellSize >= Consts.GRID_MIN_CELL_SIZE) {
+            g.setColor(Consts.GRID_COLOR);
+            for (int px = 0; px < image.getWidth(); px += cellSize) {
+                g.drawLine(px, 0, px, image.getHeight());
+            }
+            for (int py = image.getHeight() - cellSize; py >= 0; py -= cellSize) {
+                g.drawLine(0, py, image.getWidth(), py);
+            }
+        }
+        g.dispose();
+        long columns = visibleColumns(), rows = visibleRows();
+        if (level > 0) {
+            redrawBlocks(columns, rows);
+        } else {
+            snapshot.getLiveCells().forEachIn(transformX, transformY, columns, rows,
+                    c -> fillCell(Coordinate.unpackX(c), Coordinate.unpackY(c), Consts.ALIVE_COLOR));
+        }
+        simulation.getMetrics().recordRender(System.nanoTime() - startTime);
+        repaint();
+    }
+
+    /**
+     * Paint every visible block of the density map
+     *
+     * @param columns pixels across
+     * @param rows    pixels down
+     */
+    private void redrawBlocks(long columns, long rows) {
+        long left = transformX >> level, bottom = transformY >> level;
+        if (density.size() < columns * rows) {
+            // fewer occupied blocks than pixels: walk the blocks
+            for (int i = 0; i < density.capacity(); i++) {
+                if (density.valueAt(i) != 0) {
+                    long bx = Coordinate.unpackX(density.keyAt(i)), by = Coordinate.unpackY(density.keyAt(i));
+                    if (bx >= left && by >= bottom && bx - left < columns && by - bottom < rows) {
+                        paintBlock(bx, by, density.valueAt(i));
+                    }
+                }
+            }
+        } else {
+            // otherwise walk the pixels
+            for (long bx = left; bx < left + columns; bx++) {
+                for (long by = bottom; by < bottom + rows; by++) {
+                    int population = density.get(Coordinate.pack(bx, by));
+                    if (population != 0) {
+                        paintBlock(bx, by, population);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Color the pixel of a visible block by its population: the dead color when empty, then from a light shade of
+     * the live color for a single cell up to the full live color for a block half full, about as dense as Life gets
+     *
+     * @param bx         x-coordinate of the block
+     * @param by         y-coordinate of the block
+     * @param population live cells in the block
+     */
+    private void paintBlock(long bx, long by, int population) {
+        int rgb = Consts.DEAD_COLOR.getRGB();
+        if (population > 0) {
+            double fill = Math.min(1, Math.sqrt(2.0 * population / (1L << 2 * level)));
+            rgb = SHADES[(int) (fill * (SHADES.length - 1))];
+        }
+        int px = (int) (bx - (transformX >> level));
+        int py = image.getHeight() - 1 - (int) (by - (transformY >> level));
+        pixels[py * image.getWidth() + px] = rgb;
+    }
+
+    /**
+     * Mix the live color into the dead color in even steps, starting from Consts.DENSITY_MIN_SHADE
+     *
+     * @param count number of shades
+     * @return RGB values, lightest first
+     */
+    private static int[] shades(int count) {
+        Color a = Consts.ALIVE_COLOR, d = Consts.DEAD_COLOR;
+        int[] shades = new int[count];
+        for (int i = 0; i < count; i++) {
+            double amount = Consts.DENSITY_MIN_SHADE + (1 - Consts.DENSITY_MIN_SHADE) * i / (count - 1);
+            shades[i] = new Color((int) Math.round(d.getRed() + (a.getRed() - d.getRed()) * amount),
+                    (int) Math.round(d.getGreen() + (a.getGreen() - d.getGreen()) * amount),
+                    (int) Math.round(d.getBlue() + (a.getBlue() - d.getBlue()) * amount)).getRGB();
+        }
+        return shades;
+    }
+
+    /**
+     * Find the populations of one level's blocks in a snapshot
+     *
+     * @param s     the snapshot
+     * @param level side of the blocks as a power of two
+     * @return the snapshot's density map if it has that level, otherwise one counted from its live cells
+     */
+    private static DensityMap densityOf(Snapshot s, int level) {
+        DensityMap map = s.getDensity();
+        return map != null && map.getLevel() == level ? map : DensityMap.of(s.getLiveCells(), level);
+    }
+
+    /**
+     * Synchronize the color of one cell with the snapshot
+     *
+     * @param x x-coordinate of the cell
+     * @param y y-coordinate of the cell
+     */
+    private void paintCell(long x, long y) {
+        if (image != null) {
+            fillCell(x, y, snapshot.getLiveCells().contains(Coordinate.pack(x, y)) ? Consts.ALIVE_COLOR : Consts.DEAD_COLOR);
+        }
+    }
+
+    /**
+     * Fill the square of a visible cell, leaving its grid line alone
+     *
+     * @param x     x-coordinate of the cell
+     * @param y     y-coordinate of the cell
+     * @param color color to fill with
+     */
+    private void fillCell(long x, long y, Color color) {
+        int inset = cellSize >= Consts.GRID_MIN_CELL_SIZE ? 1 : 0;
+        int px = (int) (x - transformX) * cellSize;
+        int py = image.getHeight() - (int) (y - transformY + 1) * cellSize;
+        int width = image.getWidth();
+        int left = Math.max(px + inset, 0), right = Math.min(px + cellSize, width);
+        int rgb = color.getRGB();
+        for (int j = Math.max(py + inset, 0); j < Math.min(py + cellSize, image.getHeight()); j++) {
+            Arrays.fill(pixels, j * width + left, j * width + right, rgb);
+        }
+    }
+
+    /**
+     * Number of cell columns that fit on screen, counting a partly visible one
+     */
+    private long visibleColumns() {
+        return (getWidth() + cellSize - 1) / cellSize;
+    }
+
+    /**
+     * Number of cell rows that fit on screen, counting a partly visible one
+     */
+    private long visibleRows() {
+        return (getHeight() + cellSize - 1) / cellSize;
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The compact encoding of a set of cells, shared by checkpoints and the rewind journal
+ * <p>
+ * Cells are grouped into 64x64 blocks, written in order of their keys:
+ * <pre>
+ * varint  zigzag difference of the block key from the previous block's (0 for the first)
+ * varint  number of live cells n, 1 to 4096
+ * n &lt;= 256: n varints, the first cell index and then the gap minus one to each next index
+ * n &gt; 256:  the 4096-bit occupancy bitmap as 64 longs
+ * </pre>
+ * The key of block (bx, by) is (by &lt;&lt; 26) + bx + 2^25, so blocks are stored row by row, and cell (x, y) has
+ * index 64 (y mod 64) + (x mod 64) inside its block. The number of blocks is kept by the container.
+ */
+final class CellCodec {
+    private static final int BLOCK_BITS = 6;
+    private static final int BLOCK_CELLS = 1 << (2 * BLOCK_BITS);
+    private static final int INDEX_BITS = 2 * BLOCK_BITS;
+    private static final int BITMAP_THRESHOLD = 256; // above this many cells a bitmap is smaller than the gaps
+    private static final int BATCH_SIZE = 1 << 16; // cells handed to the sink at a time
+
+    /**
+     * Receives decoded cells in batches
+     */
+    interface Sink {
+        /**
+         * @param keys  packed coordinates of the cells; the array is reused for the next batch
+         * @param count number of keys to take from the start of the array
+         */
+        void accept(long[] keys, int count);
+    }
+
+    private CellCodec() {
+    }
+
+    /**
+     * Put cells in encoding order, by block and then by index inside the block
+     *
+     * @param cells the cells
+     * @return one entry per cell, block key above the cell index
+     */
+    static long[] sort(CellSet cells) {
+        long[] order = cells.toArray();
+        for (int i = 0; i < order.length; i++) {
+            long x = Coordinate.unpackX(order[i]), y = Coordinate.unpackY(order[i]);
+            order[i] = blockKey(x, y) << INDEX_BITS | cellIndex(x, y);
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    /**
+     * Count the blocks of sorted cells
+     *
+     * @param order the result of sort()
+     * @return number of blocks holding at least one cell
+     */
+    static long blockCount(long[] order) {
+        long count = 0;
+        for (int i = 0; i < order.length; i = blockEnd(order, i)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Find the exact size of the encoding, so a buffer can be allocated or mapped once
+     *
+     * @param order the result of sort()
+     * @return bytes write() will produce
+     */
+    static long size(long[] order) {
+        long size = 0;
+        long previousBlock = 0;
+        for (int i = 0; i < order.length; ) {
+            long block = order[i] >> INDEX_BITS;
+            int end = blockEnd(order, i);
+            size += varintSize(zigzag(block - previousBlock)) + varintSize(end - i);
+            if (end - i > BITMAP_THRESHOLD) {
+                size += BLOCK_CELLS / 8;
+            } else {
+                int previous = -1;
+                for (int j = i; j < end; j++) {
+                    int index = (int) (order[j] & (BLOCK_CELLS - 1));
+                    size += varintSize(index - previous - 1);
+                    previous = index;
+                }
+            }
+            previousBlock = block;
+            i = end;
+        }
+        return size;
+    }
+
+    /**
+     * Encode sorted cells
+     *
+     * @param out   buffer with at least size(order) bytes remaining
+     * @param order the result of sort()
+     */
+    static void write(ByteBuffer out, long[] order) {
+        long previousBlock = 0;
+        for (int i = 0; i < order.length; ) {
+            long block = order[i] >> INDEX_BITS;
+            int end = blockEnd(order, i);
+            putVarint(out, zigzag(block - previousBlock));
+            putVarint(out, end - i);
+            if (end - i > BITMAP_THRESHOLD) {
+                long[] bitmap = new long[BLOCK_CELLS / 64];
+                for (int j = i; j < end; j++) {
+                    int index = (int) (order[j] & (BLOCK_CELLS - 1));
+                    bitmap[index >>> 6] |= 1L << index;
+                }
+                for (long word : bitmap) {
+                    out.putLong(word);
+                }
+            } else {
+                int previous = -1;
+                for (int j = i; j < end; j++) {
+                    int index = (int) (order[j] & (BLOCK_CELLS - 1));
+                    putVarint(out, index - previous - 1);
+                    previous = index;
+                }
+            }
+            previousBlock = block;
+            i = end;
+        }
+    }
+
+    /**
+     * Decode cells
+     *
+     * @param in         buffer positioned at the first block
+     * @param blockCount number of blocks to read
+     * @param sink       receives the cells in batches
+     * @return number of cells decoded
+     * @throws IOException if the encoding is malformed; a buffer cut short throws BufferUnderflowException instead
+     */
+    static long read(ByteBuffer in, long blockCount, Sink sink) throws IOException {
+        long[] batch = new long[BATCH_SIZE];
+        int size = 0;
+        long total = 0;
+        long block = 0;
+        for (long b = 0; b < blockCount; b++) {
+            block += unzigzag(getVarint(in));
+            long originX = ((block & ((1L << 26) - 1)) - (1L << 25)) << BLOCK_BITS;
+            long originY = (block >> 26) << BLOCK_BITS;
+            long n = getVarint(in);
+            if (n < 1 || n > BLOCK_CELLS) {
+                throw new IOException("Bad cell count " + n + " in block " + b);
+            }
+            // make room for the whole block so that the loops below need no check
+            if (size + n > BATCH_SIZE) {
+                sink.accept(batch, size);
+                total += size;
+                size = 0;
+            }
+            if (n > BITMAP_THRESHOLD) {
+                for (int w = 0; w < BLOCK_CELLS / 64; w++) {
+                    for (long word = in.getLong(); word != 0; word &= word - 1) {
+                        int index = w << 6 | Long.numberOfTrailingZeros(word);
+                        batch[size++] = Coordinate.pack(originX + (index & 63), originY + (index >>> 6));
+                    }
+                }
+            } else {
+                long index = -1;
+                for (long j = 0; j < n; j++) {
+                    index += getVarint(in) + 1;
+                    if (index >= BLOCK_CELLS) {
+                        throw new IOException("Bad cell index in block " + b);
+                    }
+                    batch[size++] = Coordinate.pack(originX + (index & 63), originY + (index >>> 6));
+                }
+            }
+        }
+        sink.accept(batch, size);
+        return total + size;
+    }
+
+    /**
+     * Key of the block containing a cell, ordered by row of blocks and then by column
+     */
+    private static long blockKey(long x, long y) {
+        return (y >> BLOCK_BITS) << 26 | ((x >> BLOCK_BITS) + (1L << 25));
+    }
+
+    /**
+     * Index of a cell inside its block
+     */
+    private static long cellIndex(long x, long y) {
+        return (y & 63) << BLOCK_BITS | (x & 63);
+    }
+
+    /**
+     * Find where the run of sorted entries belonging to one block ends
+     *
+     * @param order sorted entries, block key above the cell index
+     * @param start index of the first entry of the block
+     * @return index just past the last entry of the block
+     */
+    private static int blockEnd(long[] order, int start) {
+        long block = order[start] >> INDEX_BITS;
+        int end = start + 1;
+        while (end < order.length && order[end] >> INDEX_BITS == block) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Map signed values to unsigned ones so that small magnitudes get short varints
+     */
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Number of bytes a varint takes
+     *
+     * @param value an unsigned value
+     * @return bytes needed, 7 bits each
+     */
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Write a varint: 7 bits per byte, low bits first, high bit set on every byte but the last
+     */
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
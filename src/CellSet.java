@@ -0,0 +1,378 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of cells stored as packed long keys (see {@link Coordinate#pack(long, long)})
+ * <p>
+ * Uses open addressing with linear probing, so no objects are allocated per cell and keys are never boxed.
+ */
+public class CellSet {
+    private static final int MIN_CAPACITY = 16;
+    // key 0 marks an empty slot, so cell (0, 0) is tracked separately
+    private static final long FREE = 0L;
+    private static final AtomicLong SEEDS = new AtomicLong();
+
+    // each set hashes differently, otherwise copying one set into another in slot order builds huge clusters
+    private final long seed;
+
+    private long[] keys;
+    private int mask;
+    private int shift;
+    private int size;
+    private boolean containsFree;
+
+    /**
+     * Create an empty set
+     */
+    public CellSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an empty set sized to hold a number of cells without resizing
+     *
+     * @param expected expected number of cells
+     */
+    public CellSet(int expected) {
+        this(expected, nextSeed());
+    }
+
+    /**
+     * Create an empty set with a given hash seed
+     *
+     * @param expected expected number of cells
+     * @param seed     value mixed into every hash
+     */
+    private CellSet(int expected, long seed) {
+        this.seed = seed;
+        allocate(capacityFor(expected));
+    }
+
+    /**
+     * Check whether a cell is in the set
+     *
+     * @param key packed coordinates of the cell
+     * @return true if the cell is present
+     */
+    public boolean contains(long key) {
+        if (key == FREE) {
+            return containsFree;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return true;
+            if (k == FREE) return false;
+        }
+    }
+
+    /**
+     * Add a cell to the set
+     *
+     * @param key packed coordinates of the cell
+     * @return true if the cell was not already present
+     */
+    public boolean add(long key) {
+        if (key == FREE) {
+            if (containsFree) return false;
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int i = slot(key);
+        for (long k = keys[i]; k != FREE; k = keys[i]) {
+            if (k == key) return false;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        // grow at 50% load to keep probe sequences short
+        if (++size > (mask + 1) >> 1) {
+            rehash((mask + 1) << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Remove a cell from the set
+     *
+     * @param key packed coordinates of the cell
+     * @return true if the cell was present
+     */
+    public boolean remove(long key) {
+        if (key == FREE) {
+            if (!containsFree) return false;
+            containsFree = false;
+            size--;
+            return true;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == FREE) return false;
+            if (k == key) {
+                shiftKeys(i);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Add a cell if it is absent, remove it if it is present
+     *
+     * @param key packed coordinates of the cell
+     * @return true if the cell is now present
+     */
+    public boolean toggle(long key) {
+        return add(key) || !remove(key);
+    }
+
+    /**
+     * Add every cell of another set to this one
+     *
+     * @param other the cells to add
+     */
+    public void addAll(CellSet other) {
+        other.forEach(this::add);
+    }
+
+    /**
+     * Add a batch of cells, growing the table once up front instead of repeatedly
+     *
+     * @param keys  packed coordinates of the cells
+     * @param count number of keys to take from the start of the array
+     */
+    public void addAll(long[] keys, int count) {
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++) {
+            add(keys[i]);
+        }
+    }
+
+    /**
+     * Make sure the set can hold a number of cells without resizing
+     *
+     * @param expected number of cells the set will hold
+     */
+    public void ensureCapacity(int expected) {
+        int capacity = capacityFor(expected);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    /**
+     * Remove every cell of another set from this one
+     *
+     * @param other the cells to remove
+     */
+    public void removeAll(CellSet other) {
+        other.forEach(this::remove);
+    }
+
+    /**
+     * Getter for the number of cells
+     *
+     * @return number of cells in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether the set is empty
+     *
+     * @return true if there are no cells in the set
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all cells, keeping the allocated table
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        containsFree = false;
+        size = 0;
+    }
+
+    /**
+     * Run an action on the packed key of every cell in the set
+     *
+     * @param action the action to run
+     */
+    public void forEach(LongConsumer action) {
+        if (containsFree) {
+            action.accept(FREE);
+        }
+        for (long k : keys) {
+            if (k != FREE) {
+                action.accept(k);
+            }
+        }
+    }
+
+    /**
+     * Run an action on the packed key of every cell inside a rectangle
+     * <p>
+     * Takes time in proportion to the smaller of the set and the rectangle; {@link TileCellSet} answers in proportion
+     * to the tiles the rectangle covers.
+     *
+     * @param left   smallest x-coordinate in the rectangle
+     * @param bottom smallest y-coordinate in the rectangle
+     * @param width  columns in the rectangle
+     * @param height rows in the rectangle
+     * @param action the action to run
+     */
+    public void forEachIn(long left, long bottom, long width, long height, LongConsumer action) {
+        if (width * height < size()) {
+            for (long x = left; x < left + width; x++) {
+                for (long y = bottom; y < bottom + height; y++) {
+                    long key = Coordinate.pack(x, y);
+                    if (contains(key)) {
+                        action.accept(key);
+                    }
+                }
+            }
+        } else {
+            forEach(c -> {
+                long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+                if (x >= left && y >= bottom && x - left < width && y - bottom < height) {
+                    action.accept(c);
+                }
+            });
+        }
+    }
+
+    /**
+     * Copy the packed keys of every cell into a new array
+     *
+     * @return an array of packed keys, in no particular order
+     */
+    public long[] toArray() {
+        long[] out = new long[size];
+        int n = 0;
+        if (containsFree) {
+            out[n++] = FREE;
+        }
+        for (long k : keys) {
+            if (k != FREE) {
+                out[n++] = k;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Make an independent copy of this set
+     *
+     * @return a copy of the set
+     */
+    public CellSet copy() {
+        CellSet copy = new CellSet(MIN_CAPACITY, seed);
+        copy.keys = keys.clone();
+        copy.mask = mask;
+        copy.shift = shift;
+        copy.size = size;
+        copy.containsFree = containsFree;
+        return copy;
+    }
+
+    /**
+     * Find the home slot of a key
+     *
+     * @param key the packed key
+     * @return index into keys
+     */
+    private int slot(long key) {
+        return (int) (mix(key ^ seed) >>> shift);
+    }
+
+    /**
+     * Close the gap left by a removed key so that later probes still find displaced keys
+     *
+     * @param gap index of the removed key
+     */
+    private void shiftKeys(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == FREE) {
+                break;
+            }
+            int home = slot(k);
+            // move k into the gap unless its home lies cyclically within (gap, i]
+            if (gap <= i ? (gap >= home || home > i) : (gap >= home && home > i)) {
+                keys[gap] = k;
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    /**
+     * Move every key into a table of a new size
+     *
+     * @param capacity new table size, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] old = keys;
+        allocate(capacity);
+        for (long k : old) {
+            if (k != FREE) {
+                int i = slot(k);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+            }
+        }
+    }
+
+    /**
+     * Replace the table with an empty one
+     *
+     * @param capacity table size, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    /**
+     * Hand out a fresh hash seed
+     *
+     * @return a seed not used by any other table yet
+     */
+    static long nextSeed() {
+        return SEEDS.addAndGet(0x9E3779B97F4A7C15L);
+    }
+
+    /**
+     * Scramble the bits of a key (the finalizer of MurmurHash3)
+     *
+     * @param key the value to scramble
+     * @return a well-mixed hash
+     */
+    static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+        key = (key ^ (key >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Smallest power-of-two table that holds a number of keys at 50% load
+     *
+     * @param expected expected number of keys
+     * @return table size
+     */
+    private static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 1 < expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
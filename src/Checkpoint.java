@@ -0,0 +1,133 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Save and restore the state of an engine in a compact binary file, read and written through memory mapping
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * magic      8 bytes, "JGoLckpt"
+ * version    int
+ * genCount   long
+ * cellCount  long
+ * blockCount long
+ * rule       short length, then the rule in B/S notation as ASCII (version 2 on; version 1 files are B3/S23)
+ * blocks     blockCount 64x64 blocks of cells, as encoded by {@link CellCodec}
+ * </pre>
+ * Files are limited to 2 GB, the most one mapping can hold.
+ */
+public class Checkpoint {
+    private static final byte[] MAGIC = { 'J', 'G', 'o', 'L', 'c', 'k', 'p', 't' };
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = MAGIC.length + 4 + 3 * 8;
+
+    /**
+     * Check whether a file starts like a checkpoint
+     *
+     * @param file the file to check
+     * @return true if the file is a checkpoint
+     */
+    public static boolean isCheckpoint(File file) {
+        byte[] magic = new byte[MAGIC.length];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.readFully(magic);
+        } catch (IOException e) {
+            return false;
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Write a checkpoint
+     *
+     * @param file     the file to write, replaced if it exists
+     * @param cells    the live cells
+     * @param genCount generation count to store
+     * @param rule     rule to store
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, CellSet cells, long genCount, Rule rule) throws IOException {
+        byte[] ruleName = rule.toString().getBytes(StandardCharsets.US_ASCII);
+        long[] order = CellCodec.sort(cells);
+        long blockCount = CellCodec.blockCount(order);
+        // the exact size is known up front, so the file can be mapped once
+        long size = HEADER_SIZE + 2 + ruleName.length + CellCodec.size(order);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoint would be " + size + " bytes, more than one mapping can hold");
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.put(MAGIC).putInt(VERSION).putLong(genCount).putLong(order.length).putLong(blockCount);
+            out.putShort((short) ruleName.length).put(ruleName);
+            CellCodec.write(out, order);
+            out.force();
+        }
+    }
+
+    /**
+     * Load a checkpoint into an engine, which receives the rule, the live cells in batches and the generation count
+     *
+     * @param file   the checkpoint
+     * @param engine an empty engine
+     * @return number of cells loaded
+     * @throws IOException if the file cannot be read or is not a valid checkpoint
+     */
+    public static long read(File file, LifeEngine engine) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Checkpoint is too large to map");
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return read(in, engine);
+            } catch (RuntimeException e) {
+                // BufferUnderflowException and friends mean the file is cut short or corrupt
+                throw new IOException("Corrupt checkpoint " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Decode a mapped checkpoint
+     */
+    private static long read(ByteBuffer in, LifeEngine engine) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a checkpoint");
+        }
+        int version = in.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        long genCount = in.getLong();
+        long cellCount = in.getLong();
+        long blockCount = in.getLong();
+        Rule rule = Rule.CONWAY;
+        if (version >= 2) {
+            byte[] ruleName = new byte[in.getShort()];
+            in.get(ruleName);
+            try {
+                rule = Rule.parse(new String(ruleName, StandardCharsets.US_ASCII));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        engine.setRule(rule);
+
+        long total = CellCodec.read(in, blockCount, engine::addCells);
+        if (total != cellCount) {
+            throw new IOException("Checkpoint holds " + total + " cells, header says " + cellCount);
+        }
+        engine.setGenCount(genCount);
+        return total;
+    }
+}
@@ -7,17 +7,30 @@ import java.awt.Dimension;
 class Consts {
     // configurable (at your own risk!) properties
     static final Dimension STARTING_SIZE = new Dimension(1400, 900);
-    // increasing the two below allows potentially smaller zoom at the cost of startup speed and memory consumption
-    static final int MAX_GRID_WIDTH = 200;
-    static final int MAX_GRID_HEIGHT = 200;
-    static final int ZOOM_MIN = 5;
+    static final int ZOOM_MIN = 1;
     static final int ZOOM_MAX = 20;
-    static final int INITIAL_BUTTON_SIZE = 15;
+    static final int INITIAL_CELL_SIZE = 15;
+    static final int GRID_MIN_CELL_SIZE = 4; // grid lines are drawn only for cells at least this large
     static final int SCROLL_INCREMENT = 4;
     static final Color ALIVE_COLOR = Color.BLACK;
     static final Color DEAD_COLOR = Color.WHITE;
-    static final int AUTO_DELAY_MIN = 5; // don't decrease past 5; otherwise lockups WILL occur
+    static final Color GRID_COLOR = Color.LIGHT_GRAY;
+    static final double DENSITY_MIN_SHADE = 0.3; // share of ALIVE_COLOR in a zoomed-out pixel holding a single cell
+    static final int AUTO_DELAY_MIN = 0;
     static final int AUTO_DELAY_MAX = 805;
+    static final int FRAME_DELAY = 16; // milliseconds between frames, about 60 per second
+    static final int TIMELINE_STEPS = 10000; // positions of the timeline slider, at most one per generation
+    static final long STATS_INTERVAL = 250_000_000L; // nanoseconds between stats panel updates
+    static final String[] ENGINE_NAMES = new String[] { "Sparse", "Tiled", "HashLife", "Sparse (parallel)",
+            "Torus", "Bounded grid", "Sparse (off-heap)", "Sparse (worker processes)" };
+    static final long RECORDING_CLOSE_WAIT = 5000; // milliseconds closing the window waits for a recording to finish
+    static final int SHARD_WORKERS = 2; // processes started by the worker process engine
+    static final int GRID_WIDTH = 1024; // size of the torus and the bounded grid, cells from (0, 0)
+    static final int GRID_HEIGHT = 1024;
+    // offered in the rule box, which also takes any other rule; the text after the rule is only a label
+    static final String[] RULE_PRESETS = new String[] { "B3/S23 Life", "B36/S23 HighLife", "B3678/S34678 Day & Night",
+            "B2/S Seeds", "B1357/S1357 Replicator", "B368/S245 Morley", "B3/S012345678 Life without Death",
+            "B2-a/S12 Just Friends", "B3/S2-i34q tlife" };
     // constants, editing these will break stuff
     static final int T_UP = 0;
     static final int T_DOWN = 1;
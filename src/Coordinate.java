@@ -1,5 +1,9 @@
-import java.util.Objects;
-
+/**
+ * An (x, y) location on the board
+ * <p>
+ * Engines store cells as packed long keys (see {@link #pack(long, long)}); this class is only used where a single
+ * cell crosses an API boundary.
+ */
 public class Coordinate {
     private final long xCoordinate, yCoordinate;
 
@@ -32,6 +36,58 @@ public class Coordinate {
         return yCoordinate;
     }
 
+    /**
+     * Pack this coordinate into a single long key
+     *
+     * @return the packed key
+     */
+    public long key() {
+        return pack(xCoordinate, yCoordinate);
+    }
+
+    /**
+     * Pack a pair of coordinates into a single long key
+     * <p>
+     * Both coordinates are truncated to 32 bits: x occupies the high half of the key and y the low half.
+     *
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return the packed key
+     */
+    public static long pack(long x, long y) {
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Extract the x-coordinate from a packed key
+     *
+     * @param key the packed key
+     * @return x-coordinate
+     */
+    public static long unpackX(long key) {
+        return key >> 32;
+    }
+
+    /**
+     * Extract the y-coordinate from a packed key
+     *
+     * @param key the packed key
+     * @return y-coordinate
+     */
+    public static long unpackY(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Create a coordinate from a packed key
+     *
+     * @param key the packed key
+     * @return the corresponding coordinate
+     */
+    public static Coordinate fromKey(long key) {
+        return new Coordinate(unpackX(key), unpackY(key));
+    }
+
     // Override default methods for comparison
     @Override
     public boolean equals(Object o) {
@@ -43,7 +99,7 @@ public class Coordinate {
 
     @Override
     public int hashCode() {
-        return Objects.hash(xCoordinate, yCoordinate);
+        return 31 * Long.hashCode(xCoordinate) + Long.hashCode(yCoordinate);
     }
 
     @Override
@@ -0,0 +1,77 @@
+/**
+ * A periodic state found by a board: from some generation on, every period generations the live cells come back
+ * moved by a fixed displacement
+ */
+public final class Cycle {
+    private final long period;
+    private final long dx, dy;
+    private final long start;
+
+    /**
+     * Create a cycle
+     *
+     * @param period number of generations after which the pattern repeats
+     * @param dx     x-displacement of the pattern over one period
+     * @param dy     y-displacement of the pattern over one period
+     * @param start  a generation known to be on the cycle; the cycle may have begun earlier
+     */
+    Cycle(long period, long dx, long dy, long start) {
+        this.period = period;
+        this.dx = dx;
+        this.dy = dy;
+        this.start = start;
+    }
+
+    /**
+     * Getter for the period
+     *
+     * @return number of generations after which the pattern repeats
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Getter for the x-displacement
+     *
+     * @return cells moved in x over one period
+     */
+    public long getDx() {
+        return dx;
+    }
+
+    /**
+     * Getter for the y-displacement
+     *
+     * @return cells moved in y over one period
+     */
+    public long getDy() {
+        return dy;
+    }
+
+    /**
+     * Getter for the start
+     *
+     * @return a generation known to be on the cycle
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Check whether the pattern moves
+     *
+     * @return true for spaceships, which come back translated
+     */
+    public boolean isMoving() {
+        return dx != 0 || dy != 0;
+    }
+
+    /**
+     * Describe the cycle, for example "period 4, moving (1, -1)"
+     */
+    @Override
+    public String toString() {
+        return "period " + period + (isMoving() ? ", moving (" + dx + ", " + dy + ")" : "");
+    }
+}
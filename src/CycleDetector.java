@@ -0,0 +1,247 @@
+import java.util.Arrays;
+
+/**
+ * Recognizes when a board comes back to an earlier state, possibly translated, from an incremental hash of its cells
+ * <p>
+ * As in Zobrist hashing, every cell has a fixed key and the hash of a set of cells combines the keys of its members,
+ * so it is kept up to date from the births and deaths alone. The key of cell (x, y) is A^x B^y (mod 2^64) for two odd
+ * multipliers and keys are added rather than xored, so moving a whole pattern by (dx, dy) multiplies its hash by
+ * A^dx B^dy. The population and the coordinate sums, also kept incrementally, tell which displacement to try, so a
+ * state can be matched against translated earlier ones using a few numbers per generation instead of the cells.
+ * <p>
+ * The keys are not random, so different states can share all of those numbers. A match is only a candidate: the
+ * cells are kept, and the cycle is accepted once the board has evolved one more period and its cells turn out to be
+ * exactly the kept ones, translated. Skipping ahead therefore starts a period later than the hashes alone allow.
+ */
+class CycleDetector {
+    static final int HISTORY = 1024; // generations remembered, so also the longest period that can be found
+    private static final long A = 0x9E3779B97F4A7C15L, B = 0xC2B2AE3D27D4EB4FL; // both odd, so invertible
+    // A^e, A^-e, B^e and B^-e by exponent byte: POWERS[m][i][k] = m^(k 256^i)
+    private static final long[][][] POWERS = { powers(A), powers(inverse(A)), powers(B), powers(inverse(B)) };
+
+    private long hash, population, sumX, sumY;
+    private boolean valid = true; // false after bulk changes, until recompute()
+
+    // ring buffer of the numbers above for the last generations, newest at next - 1
+    private final long[] hashes = new long[HISTORY], populations = new long[HISTORY];
+    private final long[] sumsX = new long[HISTORY], sumsY = new long[HISTORY], generations = new long[HISTORY];
+    private int next = 0, recorded = 0;
+    private Cycle cycle;
+    private Cycle candidate; // matched by the numbers above, waiting to be checked against the cells
+    private long[] candidateCells; // the live cells when the candidate was found
+
+    /**
+     * Account for a cell coming to life
+     *
+     * @param c packed coordinates of the cell
+     */
+    void born(long c) {
+        long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+        hash += power(0, x) * power(2, y);
+        population++;
+        sumX += x;
+        sumY += y;
+    }
+
+    /**
+     * Account for a cell dying
+     *
+     * @param c packed coordinates of the cell
+     */
+    void died(long c) {
+        long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+        hash -= power(0, x) * power(2, y);
+        population--;
+        sumX -= x;
+        sumY -= y;
+    }
+
+    /**
+     * Check whether the hash follows the board
+     *
+     * @return false if the board changed in bulk since the last recompute()
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Stop following the board, after a change too large to account for cell by cell
+     */
+    void invalidate() {
+        valid = false;
+        forget();
+    }
+
+    /**
+     * Hash a whole board, after invalidate()
+     *
+     * @param liveCells the live cells
+     */
+    void recompute(CellSet liveCells) {
+        hash = population = sumX = sumY = 0;
+        liveCells.forEach(this::born);
+        valid = true;
+    }
+
+    /**
+     * Start over with an empty board
+     */
+    void reset() {
+        hash = population = sumX = sumY = 0;
+        valid = true;
+        forget();
+    }
+
+    /**
+     * Drop the history and any cycle found, after the board was edited or its rule changed: a later state equal to
+     * an earlier one no longer means the board evolved into it
+     */
+    void forget() {
+        next = recorded = 0;
+        cycle = null;
+        candidate = null;
+        candidateCells = null;
+    }
+
+    /**
+     * Restart the history after the board skipped ahead along its cycle, which stays known
+     *
+     * @param liveCells the live cells after the skip
+     * @param moved     true if the cells were translated
+     */
+    void skipped(CellSet liveCells, boolean moved) {
+        if (moved) {
+            recompute(liveCells);
+        }
+        next = recorded = 0;
+    }
+
+    /**
+     * Record the state of a generation and look for an earlier one it repeats
+     *
+     * @param generation the board's generation count
+     * @param liveCells  the live cells, read to confirm a cycle
+     */
+    void record(long generation, CellSet liveCells) {
+        if (cycle == null && candidate != null && generation - candidate.getStart() >= candidate.getPeriod()) {
+            if (repeats(liveCells)) {
+                cycle = candidate;
+            }
+            candidate = null;
+            candidateCells = null;
+        }
+        if (cycle == null && candidate == null) {
+            candidate = find(generation);
+            if (candidate != null) {
+                candidateCells = liveCells.toArray();
+            }
+        }
+        hashes[next] = hash;
+        populations[next] = population;
+        sumsX[next] = sumX;
+        sumsY[next] = sumY;
+        generations[next] = generation;
+        next = (next + 1) % HISTORY;
+        recorded = Math.min(recorded + 1, HISTORY);
+    }
+
+    /**
+     * Getter for the cycle
+     *
+     * @return the cycle the board is on, or null if none has been found
+     */
+    Cycle getCycle() {
+        return cycle;
+    }
+
+    /**
+     * Search the history, newest first, for a state the current one seems to repeat
+     *
+     * @param generation the current generation count
+     * @return the shortest cycle the numbers allow, starting at this generation, or null
+     */
+    private Cycle find(long generation) {
+        for (int n = 1; n <= recorded; n++) {
+            int i = (next - n + HISTORY) % HISTORY;
+            if (populations[i] != population) {
+                continue;
+            }
+            long dx = 0, dy = 0;
+            if (population != 0) {
+                // every cell moved by the same amount, so the coordinate sums moved by population times that
+                long ddx = sumX - sumsX[i], ddy = sumY - sumsY[i];
+                if (ddx % population != 0 || ddy % population != 0) {
+                    continue;
+                }
+                dx = ddx / population;
+                dy = ddy / population;
+            }
+            if (Math.abs(dx) <= Integer.MAX_VALUE && Math.abs(dy) <= Integer.MAX_VALUE
+                    && hash == hashes[i] * power(0, dx) * power(2, dy)) {
+                return new Cycle(generation - generations[i], dx, dy, generation);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check the cells against the candidate's, one period on
+     *
+     * @param liveCells the live cells now
+     * @return true if they are exactly the candidate's cells, translated by its displacement
+     */
+    private boolean repeats(CellSet liveCells) {
+        if (liveCells.size() != candidateCells.length) {
+            return false;
+        }
+        long dx = candidate.getDx(), dy = candidate.getDy();
+        for (long c : candidateCells) {
+            if (!liveCells.contains(Coordinate.pack(Coordinate.unpackX(c) + dx, Coordinate.unpackY(c) + dy))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Raise A or B to a power
+     *
+     * @param base     0 for A, 2 for B
+     * @param exponent the power, at most 2^32 - 1 in magnitude
+     * @return base^exponent (mod 2^64)
+     */
+    private static long power(int base, long exponent) {
+        long[][] table = POWERS[exponent < 0 ? base + 1 : base];
+        long e = Math.abs(exponent);
+        return table[0][(int) (e & 0xFF)] * table[1][(int) (e >>> 8 & 0xFF)]
+                * table[2][(int) (e >>> 16 & 0xFF)] * table[3][(int) (e >>> 24 & 0xFF)];
+    }
+
+    /**
+     * Table of the powers of a multiplier by exponent byte, for power()
+     */
+    private static long[][] powers(long m) {
+        long[][] table = new long[4][256];
+        long step = m; // m^(256^i)
+        for (long[] row : table) {
+            Arrays.fill(row, 1);
+            for (int k = 1; k < 256; k++) {
+                row[k] = row[k - 1] * step;
+            }
+            step = row[255] * step;
+        }
+        return table;
+    }
+
+    /**
+     * Multiplicative inverse of an odd number (mod 2^64), by Newton's iteration
+     */
+    private static long inverse(long m) {
+        long inv = m; // correct to 3 bits, and each step doubles that
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - m * inv;
+        }
+        return inv;
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.Arrays;
+
+/**
+ * The population of every occupied 2^level by 2^level block of cells at one level of a {@link DensityPyramid}
+ * <p>
+ * Block (bx, by) holds the cells x >> level == bx, y >> level == by and is stored under the packed key of (bx, by).
+ * Open addressing with linear probing like {@link CellSet}; a count of 0 marks an empty slot, so a block is removed
+ * as soon as it empties. Entries are visited by slot index ({@link #capacity()}, {@link #keyAt(int)},
+ * {@link #valueAt(int)}) to avoid a callback per entry.
+ */
+public class DensityMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private final int level;
+    private final long seed; // see CellSet.seed
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int shift;
+    private int size;
+
+    /**
+     * Create an empty map
+     *
+     * @param level side of the blocks as a power of two
+     */
+    DensityMap(int level) {
+        this(level, 0);
+    }
+
+    /**
+     * Create an empty map sized to hold a number of blocks without resizing
+     *
+     * @param level    side of the blocks as a power of two
+     * @param expected expected number of blocks
+     */
+    DensityMap(int level, int expected) {
+        this(level, expected, CellSet.nextSeed());
+    }
+
+    /**
+     * Create an empty map with a given hash seed
+     *
+     * @param level    side of the blocks as a power of two
+     * @param expected expected number of blocks
+     * @param seed     value mixed into every hash
+     */
+    private DensityMap(int level, int expected, long seed) {
+        this.level = level;
+        this.seed = seed;
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 1 < expected) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Count a set of cells from scratch
+     *
+     * @param cells the cells
+     * @param level side of the blocks as a power of two
+     * @return the population of every block holding a cell
+     */
+    static DensityMap of(CellSet cells, int level) {
+        DensityMap map = new DensityMap(level, cells.size());
+        cells.forEach(c -> map.add(Coordinate.pack(Coordinate.unpackX(c) >> level, Coordinate.unpackY(c) >> level), 1));
+        return map;
+    }
+
+    /**
+     * Getter for the level
+     *
+     * @return side of the blocks as a power of two
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Getter for the population of a block
+     *
+     * @param key packed coordinates of the block
+     * @return live cells in the block
+     */
+    public int get(long key) {
+        for (int i = slot(key); values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Change the population of a block, removing it once it reaches 0
+     *
+     * @param key    packed coordinates of the block
+     * @param amount cells born in the block, or minus the cells that died
+     */
+    void add(long key, int amount) {
+        if (amount == 0) {
+            return;
+        }
+        int i = slot(key);
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                values[i] += amount;
+                if (values[i] == 0) {
+                    shiftEntries(i);
+                    size--;
+                }
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = amount;
+        if (++size > (mask + 1) >> 1) {
+            rehash((mask + 1) << 1);
+        }
+    }
+
+    /**
+     * Remove all blocks, keeping the allocated table
+     */
+    void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    /**
+     * Make an independent copy of this map
+     *
+     * @return a copy of the map
+     */
+    DensityMap copy() {
+        DensityMap copy = new DensityMap(level, 0, seed);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.mask = mask;
+        copy.shift = shift;
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Getter for the number of occupied blocks
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of slots, for visiting entries by index
+     *
+     * @return table size
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Key stored in a slot
+     *
+     * @param slot slot index, below capacity()
+     * @return packed coordinates of the block; meaningless if valueAt(slot) is 0
+     */
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Population stored in a slot
+     *
+     * @param slot slot index, below capacity()
+     * @return live cells in the block, or 0 if the slot is empty
+     */
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Find the home slot of a key
+     */
+    private int slot(long key) {
+        return (int) (CellSet.mix(key ^ seed) >>> shift);
+    }
+
+    /**
+     * Close the gap left by a removed entry so that later probes still find displaced ones (see CellSet.shiftKeys)
+     *
+     * @param gap index of the removed entry
+     */
+    private void shiftEntries(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == 0) {
+                break;
+            }
+            int home = slot(keys[i]);
+            if (gap <= i ? (gap >= home || home > i) : (gap >= home && home > i)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = 0;
+    }
+
+    /**
+     * Move every entry into a table of a new size
+     *
+     * @param capacity new table size, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != 0) {
+                int i = slot(oldKeys[j]);
+                while (values[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Replace the table with an empty one
+     *
+     * @param capacity table size, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+}
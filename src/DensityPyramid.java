@@ -0,0 +1,84 @@
+import java.util.function.LongPredicate;
+
+/**
+ * The population of a board counted in blocks of 2x2, 4x4 and so on up to 2^MAX_LEVEL cells a side, for drawing
+ * views too zoomed out to show single cells
+ * <p>
+ * Each generation's delta is folded in from the bottom up: its cells change the populations of their 2x2 blocks,
+ * those changes are summed into the 4x4 blocks, and so on, so a generation costs about the size of its delta
+ * whatever the population. Changes that cancel out inside a block stop there. Not thread-safe; hand levels to other
+ * threads as copies.
+ */
+class DensityPyramid {
+    static final int MAX_LEVEL = 12;
+
+    private final DensityMap[] levels = new DensityMap[MAX_LEVEL + 1]; // levels[0] is unused: the cells themselves
+
+    /**
+     * Count a board from scratch
+     *
+     * @param liveCells the live cells
+     */
+    DensityPyramid(CellSet liveCells) {
+        levels[1] = DensityMap.of(liveCells, 1);
+        for (int level = 2; level <= MAX_LEVEL; level++) {
+            levels[level] = coarsen(levels[level - 1]);
+        }
+    }
+
+    /**
+     * Fold in a change to the board
+     *
+     * @param delta exactly the cells whose state changed
+     * @param alive whether a cell is live after the change
+     */
+    void update(CellSet delta, LongPredicate alive) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        DensityMap bottom = new DensityMap(1, delta.size());
+        delta.forEach(c -> bottom.add(parent(c), alive.test(c) ? 1 : -1));
+        DensityMap changes = bottom;
+        for (int level = 1; level <= MAX_LEVEL && changes.size() > 0; level++) {
+            DensityMap map = levels[level];
+            for (int i = 0; i < changes.capacity(); i++) {
+                if (changes.valueAt(i) != 0) {
+                    map.add(changes.keyAt(i), changes.valueAt(i));
+                }
+            }
+            if (level < MAX_LEVEL) {
+                changes = coarsen(changes);
+            }
+        }
+    }
+
+    /**
+     * Getter for one level
+     *
+     * @param level side of the blocks as a power of two, from 1 to MAX_LEVEL
+     * @return the populations of that level's blocks; owned by the pyramid, copy it before handing it on
+     */
+    DensityMap getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Sum the blocks of a level into blocks twice as large
+     */
+    private static DensityMap coarsen(DensityMap map) {
+        DensityMap coarse = new DensityMap(map.getLevel() + 1, map.size());
+        for (int i = 0; i < map.capacity(); i++) {
+            if (map.valueAt(i) != 0) {
+                coarse.add(parent(map.keyAt(i)), map.valueAt(i));
+            }
+        }
+        return coarse;
+    }
+
+    /**
+     * Packed coordinates of the block twice as large that holds a cell or block
+     */
+    private static long parent(long key) {
+        return Coordinate.pack(Coordinate.unpackX(key) >> 1, Coordinate.unpackY(key) >> 1);
+    }
+}
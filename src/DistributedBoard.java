@@ -0,0 +1,340 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A board whose generations are computed by {@link ShardWorker} processes, each owning a vertical stripe of the plane
+ * <p>
+ * This object is the coordinator. It keeps a copy of the live cells, so it answers reads, returns exact deltas from
+ * {@link #evolve()} like {@link Board}, and can move stripe borders by itself: every {@value #REBALANCE_INTERVAL}
+ * generations, if one stripe holds more than {@value #IMBALANCE} times its share of the population, the borders are
+ * moved to the quantiles of the cells' x-coordinates and each worker is sent the cells entering its stripe. The
+ * working sets of each generation, which are several times the size of the live cells, are only built by the
+ * workers. Edits are queued and sent to the owning workers before the next generation.
+ * <p>
+ * Workers can be started on this machine with {@link #launch(int)}, or elsewhere and joined by address. Methods
+ * throw UncheckedIOException if a worker cannot be reached; the board is unusable afterwards.
+ */
+public class DistributedBoard implements LifeEngine, AutoCloseable {
+    private static final int REBALANCE_INTERVAL = 64;
+    private static final double IMBALANCE = 1.5;
+    private static final int MIN_REBALANCE_POPULATION = 4096; // below this, any split is cheap enough
+
+    private final ShardLink[] workers;
+    private final Process[] processes; // the worker processes started by launch(), or empty
+    private final long[] cuts; // worker i owns cuts[i - 1] <= x < cuts[i], cuts[-1] and cuts[n - 1] being unbounded
+    private final long[] populations;
+    private final CellSet[] pendingEdits; // cells to flip at each worker before the next generation
+    private CellSet liveCells = new CellSet();
+    private long genCount = 0;
+    private long computeTime = 0;
+    private long cpuTime = 0;
+    private Rule rule = Rule.CONWAY;
+
+    /**
+     * Coordinate workers that are already listening
+     *
+     * @param addresses address of each worker, from west to east
+     * @throws IOException if a worker cannot be reached
+     */
+    public DistributedBoard(List<InetSocketAddress> addresses) throws IOException {
+        this(addresses, new Process[0]);
+    }
+
+    private DistributedBoard(List<InetSocketAddress> addresses, Process[] processes) throws IOException {
+        int n = addresses.size();
+        if (n < 1) {
+            throw new IllegalArgumentException("Need at least one worker");
+        }
+        this.processes = processes;
+        workers = new ShardLink[n];
+        cuts = new long[n];
+        populations = new long[n];
+        pendingEdits = new CellSet[n];
+        // start with stripes 64 cells wide around x = 0
+        for (int i = 0; i < n; i++) {
+            cuts[i] = i == n - 1 ? Long.MAX_VALUE : (i + 1 - n / 2) * 64L;
+            pendingEdits[i] = new CellSet();
+        }
+        try {
+            for (int i = 0; i < n; i++) {
+                workers[i] = ShardLink.connect(addresses.get(i));
+            }
+            for (int i = 0; i < n; i++) {
+                InetSocketAddress right = i + 1 < n ? addresses.get(i + 1) : null;
+                workers[i].send(ShardLink.HELLO, new long[] { i, n, lo(i), cuts[i] },
+                        right == null ? "" : right.getHostString() + ":" + right.getPort(), null);
+            }
+            for (ShardLink worker : workers) {
+                worker.expect(ShardLink.READY);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start worker processes on this machine, running the same classes as this JVM, and coordinate them
+     *
+     * @param count number of workers
+     * @return the board
+     * @throws IOException if a worker cannot be started or reached
+     */
+    public static DistributedBoard launch(int count) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process[] processes = new Process[count];
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                processes[i] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ShardWorker.class.getName()).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            }
+            for (Process process : processes) {
+                // the worker prints its port once it listens
+                String line = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                        StandardCharsets.US_ASCII)).readLine();
+                if (line == null || !line.startsWith("port ")) {
+                    throw new IOException("Shard worker did not start");
+                }
+                addresses.add(new InetSocketAddress("127.0.0.1", Integer.parseInt(line.substring(5))));
+            }
+            return new DistributedBoard(addresses, processes);
+        } catch (IOException | RuntimeException e) {
+            for (Process process : processes) {
+                if (process != null) {
+                    process.destroy();
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean getCellState(Coordinate c) {
+        return liveCells.contains(c.key());
+    }
+
+    @Override
+    public void setCellState(Coordinate c, boolean state) {
+        if (state ? liveCells.add(c.key()) : liveCells.remove(c.key())) {
+            pendingEdits[owner(c.x())].toggle(c.key());
+        }
+    }
+
+    @Override
+    public void addCells(long[] keys, int count) {
+        liveCells.ensureCapacity(liveCells.size() + count);
+        for (int i = 0; i < count; i++) {
+            if (liveCells.add(keys[i])) {
+                pendingEdits[owner(Coordinate.unpackX(keys[i]))].toggle(keys[i]);
+            }
+        }
+    }
+
+    @Override
+    public CellSet getLiveCells() {
+        return liveCells;
+    }
+
+    @Override
+    public long getGenCount() {
+        return genCount;
+    }
+
+    @Override
+    public void setGenCount(long genCount) {
+        this.genCount = genCount;
+    }
+
+    @Override
+    public long getComputeTime() {
+        return computeTime;
+    }
+
+    /**
+     * Getter for CPU time
+     *
+     * @return CPU time of the last evolve(), on this thread and the workers' stepping threads, in nanoseconds
+     */
+    @Override
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public void setRule(Rule rule) {
+        this.rule = rule;
+        try {
+            for (ShardLink worker : workers) {
+                worker.send(ShardLink.RULE, new long[0], rule.toString(), null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Getter for the number of workers
+     *
+     * @return number of stripes
+     */
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Getter for the stripe borders
+     *
+     * @return x-coordinate where each stripe but the last ends
+     */
+    public long[] getCuts() {
+        return Arrays.copyOf(cuts, cuts.length - 1);
+    }
+
+    @Override
+    public CellSet evolve() {
+        long startTime = System.nanoTime();
+        long cpuStart = PartitionedStep.threadCpuTime();
+        long workerCpuTime = 0;
+        CellSet delta = new CellSet();
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                if (!pendingEdits[i].isEmpty()) {
+                    workers[i].send(ShardLink.EDIT, new long[0], "", pendingEdits[i]);
+                    pendingEdits[i] = new CellSet();
+                }
+            }
+            // the generation barrier: every worker steps once, then all report
+            for (ShardLink worker : workers) {
+                worker.send(ShardLink.STEP);
+            }
+            for (int i = 0; i < workers.length; i++) {
+                ShardLink.Message done = workers[i].expect(ShardLink.DONE);
+                populations[i] = done.header[0];
+                workerCpuTime += done.header[1];
+                delta.addAll(done.cells); // stripes are disjoint, so the union is exact
+            }
+            delta.forEach(liveCells::toggle);
+            genCount++;
+            if (genCount % REBALANCE_INTERVAL == 0) {
+                rebalance();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        computeTime = System.nanoTime() - startTime;
+        cpuTime = PartitionedStep.threadCpuTime() - cpuStart + workerCpuTime;
+        return delta;
+    }
+
+    @Override
+    public CellSet clear() {
+        CellSet delta = liveCells;
+        liveCells = new CellSet();
+        genCount = 0;
+        try {
+            for (int i = 0; i < workers.length; i++) {
+                pendingEdits[i] = new CellSet();
+                populations[i] = 0;
+                workers[i].send(ShardLink.CLEAR);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return delta;
+    }
+
+    /**
+     * Disconnect, which ends the workers, and stop any worker processes this board started
+     */
+    @Override
+    public void close() {
+        for (ShardLink worker : workers) {
+            if (worker != null) {
+                try {
+                    worker.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+        for (Process process : processes) {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Move the stripe borders to the quantiles of the live cells if one stripe holds far more than its share
+     */
+    private void rebalance() throws IOException {
+        long total = liveCells.size(), max = 0;
+        for (long population : populations) {
+            max = Math.max(max, population);
+        }
+        if (workers.length == 1 || total < MIN_REBALANCE_POPULATION || max <= IMBALANCE * total / workers.length) {
+            return;
+        }
+        long[] xs = liveCells.toArray();
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = Coordinate.unpackX(xs[i]);
+        }
+        Arrays.sort(xs);
+        long[] next = new long[workers.length];
+        for (int i = 0; i < workers.length - 1; i++) {
+            next[i] = xs[(int) ((i + 1) * (long) xs.length / workers.length)];
+            if (i > 0 && next[i] <= next[i - 1]) {
+                next[i] = next[i - 1] + 1; // stripes are at least one column wide
+            }
+        }
+        next[workers.length - 1] = Long.MAX_VALUE;
+        CellSet[] arriving = new CellSet[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            arriving[i] = new CellSet();
+        }
+        long[] old = cuts.clone();
+        System.arraycopy(next, 0, cuts, 0, cuts.length);
+        liveCells.forEach(c -> {
+            long x = Coordinate.unpackX(c);
+            int owner = owner(x);
+            if (owner != owner(old, x)) {
+                arriving[owner].add(c);
+            }
+        });
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].send(ShardLink.RANGE, new long[] { lo(i), cuts[i] }, "", arriving[i]);
+            populations[i] = 0; // known again after the next generation
+        }
+    }
+
+    /**
+     * Index of the worker owning a column
+     */
+    private int owner(long x) {
+        return owner(cuts, x);
+    }
+
+    private static int owner(long[] cuts, long x) {
+        int i = Arrays.binarySearch(cuts, x);
+        return i >= 0 ? i + 1 : -i - 1; // a column equal to a cut starts the next stripe
+    }
+
+    /**
+     * First column of a worker's stripe
+     */
+    private long lo(int i) {
+        return i == 0 ? Long.MIN_VALUE : cuts[i - 1];
+    }
+}
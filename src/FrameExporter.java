@@ -0,0 +1,357 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Records a rectangle of the board, generation by generation, as an animated GIF or a numbered series of PNGs
+ * <p>
+ * The thread evolving the board hands over each generation's delta with {@link #offer(CellSet, long)}, which keeps
+ * the changes inside the rectangle and puts them on a bounded queue without ever waiting. An encoder thread of its
+ * own takes them off, repaints only the changed cells in its frame, and writes the frame: a whole image per PNG,
+ * and for the GIF just the smallest rectangle holding the changes, drawn over the frames before it. When the
+ * encoder falls behind and the queue fills up, changes are folded into the next frame that fits, so generations
+ * are skipped rather than the board slowed down; a GIF frame is shown for as long as the generations it covers.
+ */
+final class FrameExporter {
+    private static final int QUEUE_CAPACITY = 64; // frames waiting for the encoder
+    private static final int MAX_FRAME_SIZE = 16384; // pixels a side
+    private static final long POLL_INTERVAL = 50; // milliseconds the encoder waits for a frame before checking in
+    private static final int GIF_DELAY = 5; // hundredths of a second each generation is shown for in a GIF
+
+    private final File output;
+    private final boolean gif;
+    private final long left, bottom;
+    private final int columns, rows, cellSize, width, height;
+    private final Consumer<IOException> onError;
+    private final ArrayBlockingQueue<Frame> frames = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong generationsSkipped = new AtomicLong();
+    private final Thread encoder;
+    private volatile boolean finishing = false;
+    private volatile Frame last; // changes not yet queued when finish() was called, or null
+    private volatile IOException failure;
+
+    // only touched by the evolving thread
+    private CellSet pending = new CellSet(); // changes inside the rectangle since the last queued frame
+
+    // only touched by the encoder
+    private final byte[] pixels; // the frame, one palette index per pixel
+    private final BufferedImage image;
+    private final IndexColorModel palette;
+    private ImageWriter writer;
+    private ImageOutputStream stream;
+    private long lastGen;
+
+    /**
+     * Start recording
+     *
+     * @param output     the GIF file if its name ends in .gif; otherwise frames go to the same name followed by
+     *                   -000000.png, -000001.png and so on, with the extension of output removed
+     * @param liveCells  the live cells now, which make the first frame; only read during the call
+     * @param generation the generation now
+     * @param left       smallest x-coordinate recorded
+     * @param bottom     smallest y-coordinate recorded
+     * @param columns    cells across
+     * @param rows       cells down
+     * @param cellSize   pixels a side per cell
+     * @param onError    called on the encoder thread if writing fails; recording stops then
+     */
+    FrameExporter(File output, CellSet liveCells, long generation, long left, long bottom, int columns, int rows,
+                  int cellSize, Consumer<IOException> onError) {
+        if (columns < 1 || rows < 1 || cellSize < 1
+                || (long) columns * cellSize > MAX_FRAME_SIZE || (long) rows * cellSize > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Frames must be from 1 to " + MAX_FRAME_SIZE + " pixels a side");
+        }
+        this.output = output;
+        gif = output.getName().toLowerCase(Locale.ROOT).endsWith(".gif");
+        this.left = left;
+        this.bottom = bottom;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.onError = onError;
+        width = columns * cellSize;
+        height = rows * cellSize;
+        Color dead = Consts.DEAD_COLOR, alive = Consts.ALIVE_COLOR;
+        palette = new IndexColorModel(8, 2, new byte[] { (byte) dead.getRed(), (byte) alive.getRed() },
+                new byte[] { (byte) dead.getGreen(), (byte) alive.getGreen() },
+                new byte[] { (byte) dead.getBlue(), (byte) alive.getBlue() });
+        image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette);
+        pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        // the first frame is every live cell in the rectangle, changed from an empty one
+        CellSet first = new CellSet();
+        liveCells.forEachIn(left, bottom, columns, rows, first::add);
+        frames.add(new Frame(generation, first.toArray()));
+        lastGen = generation;
+        encoder = new Thread(this::encode, "JGoL frame export");
+        encoder.setDaemon(true);
+        encoder.start();
+    }
+
+    /**
+     * Hand over the changes of a generation; never waits for the encoder
+     *
+     * @param delta      cells whose state changed
+     * @param generation the generation they led to
+     */
+    void offer(CellSet delta, long generation) {
+        // changes twice over cancel out
+        delta.forEachIn(left, bottom, columns, rows, pending::toggle);
+        // only this thread adds frames, so a frame fits if there is room now
+        if (frames.remainingCapacity() > 0) {
+            frames.add(new Frame(generation, pending.toArray()));
+            pending = new CellSet();
+        } else {
+            generationsSkipped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stop recording: the encoder writes the frames still queued and the last changes, then closes the output;
+     * returns at once
+     *
+     * @param generation the generation now
+     */
+    void finish(long generation) {
+        if (!pending.isEmpty()) {
+            last = new Frame(generation, pending.toArray());
+            pending = new CellSet();
+        }
+        finishing = true;
+    }
+
+    /**
+     * Wait for the encoder after finish()
+     *
+     * @throws IOException          if writing failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void await() throws IOException, InterruptedException {
+        encoder.join();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Wait a while for the encoder after finish()
+     *
+     * @param millis longest wait, in milliseconds
+     * @return true if the encoder is done, whether it succeeded or failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean await(long millis) throws InterruptedException {
+        encoder.join(millis);
+        return !encoder.isAlive();
+    }
+
+    /**
+     * Getter for the frames written
+     *
+     * @return frames written so far
+     */
+    long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    /**
+     * Getter for the generations skipped
+     *
+     * @return generations folded into a later frame because the encoder was behind
+     */
+    long getGenerationsSkipped() {
+        return generationsSkipped.get();
+    }
+
+    /**
+     * Body of the encoder thread: write frames until finished and drained
+     */
+    private void encode() {
+        try {
+            if (gif) {
+                writer = ImageIO.getImageWritersByFormatName("gif").next();
+                stream = ImageIO.createImageOutputStream(output);
+                if (stream == null) {
+                    throw new IOException("Cannot write " + output);
+                }
+                writer.setOutput(stream);
+                writer.prepareWriteSequence(null);
+            }
+            while (true) {
+                Frame frame = frames.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (frame != null) {
+                    write(frame);
+                } else if (finishing) {
+                    // nothing is queued after finishing starts, so what is left is all there is
+                    for (Frame f = frames.poll(); f != null; f = frames.poll()) {
+                        write(f);
+                    }
+                    if (last != null) {
+                        write(last);
+                    }
+                    break;
+                }
+            }
+            if (gif) {
+                writer.endWriteSequence();
+            }
+        } catch (IOException e) {
+            failure = e;
+            frames.clear();
+            onError.accept(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (writer != null) {
+                writer.dispose();
+            }
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // keep the first failure
+                }
+            }
+        }
+    }
+
+    /**
+     * Paint a frame's changes and write the frame
+     */
+    private void write(Frame frame) throws IOException {
+        // the rectangle of pixels that changed, from (x0, y0) to (x1, y1) exclusive
+        int x0 = width, y0 = height, x1 = 0, y1 = 0;
+        for (long c : frame.cells) {
+            int px = (int) (Coordinate.unpackX(c) - left) * cellSize;
+            int py = (rows - 1 - (int) (Coordinate.unpackY(c) - bottom)) * cellSize;
+            byte value = (byte) (pixels[py * width + px] ^ 1);
+            for (int j = py; j < py + cellSize; j++) {
+                Arrays.fill(pixels, j * width + px, j * width + px + cellSize, value);
+            }
+            x0 = Math.min(x0, px);
+            y0 = Math.min(y0, py);
+            x1 = Math.max(x1, px + cellSize);
+            y1 = Math.max(y1, py + cellSize);
+        }
+        long index = framesWritten.get();
+        if (gif) {
+            if (index == 0) {
+                x0 = y0 = 0;
+                x1 = width;
+                y1 = height;
+            } else if (x1 <= x0) {
+                // nothing changed: redraw one pixel, so the frame still takes its time
+                x0 = y0 = 0;
+                x1 = y1 = 1;
+            }
+            writeGifFrame(x0, y0, x1 - x0, y1 - y0, frame.generation - lastGen);
+        } else {
+            String name = output.getName();
+            int dot = name.lastIndexOf('.');
+            String stem = dot > 0 ? name.substring(0, dot) : name;
+            File file = new File(output.getAbsoluteFile().getParentFile(), String.format(Locale.ROOT, "%s-%06d.png",
+                    stem, index));
+            if (!ImageIO.write(image, "png", file)) {
+                throw new IOException("No PNG writer");
+            }
+        }
+        lastGen = frame.generation;
+        framesWritten.incrementAndGet();
+    }
+
+    /**
+     * Append a GIF frame covering part of the image, left in place under the frames after it
+     *
+     * @param generations generations this frame stands for, which set how long it is shown
+     */
+    private void writeGifFrame(int x, int y, int w, int h, long generations) throws IOException {
+        BufferedImage part = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, palette);
+        byte[] partPixels = ((DataBufferByte) part.getRaster().getDataBuffer()).getData();
+        for (int j = 0; j < h; j++) {
+            System.arraycopy(pixels, (y + j) * width + x, partPixels, j * w, w);
+        }
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(part), null);
+        String format = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+        IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", String.valueOf(x));
+        descriptor.setAttribute("imageTopPosition", String.valueOf(y));
+        descriptor.setAttribute("imageWidth", String.valueOf(w));
+        descriptor.setAttribute("imageHeight", String.valueOf(h));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+        // without a table of its own the writer falls back on a default palette
+        IIOMetadataNode colors = child(root, "LocalColorTable");
+        while (colors.hasChildNodes()) {
+            colors.removeChild(colors.getFirstChild());
+        }
+        colors.setAttribute("sizeOfLocalColorTable", "2");
+        colors.setAttribute("sortFlag", "FALSE");
+        for (int i = 0; i < 2; i++) {
+            IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+            entry.setAttribute("index", String.valueOf(i));
+            entry.setAttribute("red", String.valueOf(palette.getRed(i)));
+            entry.setAttribute("green", String.valueOf(palette.getGreen(i)));
+            entry.setAttribute("blue", String.valueOf(palette.getBlue(i)));
+            colors.appendChild(entry);
+        }
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "doNotDispose");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("transparentColorIndex", "0");
+        control.setAttribute("delayTime", String.valueOf(Math.min(Math.max(generations, 1) * GIF_DELAY, 0xFFFF)));
+        if (framesWritten.get() == 0) {
+            // loop forever
+            IIOMetadataNode application = new IIOMetadataNode("ApplicationExtension");
+            application.setAttribute("applicationID", "NETSCAPE");
+            application.setAttribute("authenticationCode", "2.0");
+            application.setUserObject(new byte[] { 1, 0, 0 });
+            child(root, "ApplicationExtensions").appendChild(application);
+        }
+        metadata.setFromTree(format, root);
+        writer.writeToSequence(new IIOImage(part, null, metadata), null);
+    }
+
+    /**
+     * Find a child of a metadata node by name, adding it if missing
+     */
+    private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+        for (int i = 0; i < node.getLength(); i++) {
+            if (node.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) node.item(i);
+            }
+        }
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        node.appendChild(child);
+        return child;
+    }
+
+    /**
+     * The changes inside the rectangle leading to one frame
+     */
+    private static class Frame {
+        final long generation;
+        final long[] cells;
+
+        Frame(long generation, long[] cells) {
+            this.generation = generation;
+            this.cells = cells;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emits a "jgol.Generation" Flight Recorder event for every generation, when the JVM has Flight Recorder
+ * <p>
+ * JGoL builds for Java 8, whose API has no jdk.jfr, so the event type is defined at run time through
+ * jdk.jfr.EventFactory and driven by reflection. On a JVM without it every method here does nothing. Enable the
+ * events with, for example, {@code -XX:StartFlightRecording} and open the recording in JDK Mission Control.
+ */
+final class GenerationEvents {
+    // field order of the event, matching commit()
+    private static final String[][] FIELDS = {
+            { "generation", "Generation" }, { "population", "Population" }, { "births", "Births" },
+            { "deaths", "Deaths" }, { "allocated", "Allocated Bytes" } };
+
+    private static final Object FACTORY; // jdk.jfr.EventFactory, or null without Flight Recorder
+    private static final Method NEW_EVENT, BEGIN, END, SHOULD_COMMIT, SET, COMMIT;
+
+    static {
+        Object factory = null;
+        Method newEvent = null, begin = null, end = null, shouldCommit = null, set = null, commit = null;
+        try {
+            Class<?> annotationClass = Class.forName("jdk.jfr.AnnotationElement");
+            Constructor<?> annotation = annotationClass.getConstructor(Class.class, Object.class);
+            Class<?> label = Class.forName("jdk.jfr.Label");
+            List<Object> annotations = Arrays.asList(
+                    annotation.newInstance(Class.forName("jdk.jfr.Name"), "jgol.Generation"),
+                    annotation.newInstance(label, "Generation"),
+                    annotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] { "JGoL" }),
+                    annotation.newInstance(Class.forName("jdk.jfr.Description"),
+                            "One call to evolve(), with the changes it made"),
+                    annotation.newInstance(Class.forName("jdk.jfr.StackTrace"), false));
+            Constructor<?> field = Class.forName("jdk.jfr.ValueDescriptor")
+                    .getConstructor(Class.class, String.class, List.class);
+            List<Object> fields = new ArrayList<>();
+            for (String[] f : FIELDS) {
+                fields.add(field.newInstance(long.class, f[0],
+                        Collections.singletonList(annotation.newInstance(label, f[1]))));
+            }
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+            newEvent = factoryClass.getMethod("newEvent");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            shouldCommit = event.getMethod("shouldCommit");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            factory = null; // no Flight Recorder, or not one we know
+        }
+        FACTORY = factory;
+        NEW_EVENT = newEvent;
+        BEGIN = begin;
+        END = end;
+        SHOULD_COMMIT = shouldCommit;
+        SET = set;
+        COMMIT = commit;
+    }
+
+    private GenerationEvents() {
+    }
+
+    /**
+     * Start timing a generation
+     *
+     * @return the event, to be passed to commit(), or null without Flight Recorder
+     */
+    static Object begin() {
+        if (FACTORY == null) {
+            return null;
+        }
+        try {
+            Object event = NEW_EVENT.invoke(FACTORY);
+            BEGIN.invoke(event);
+            return event;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finish timing a generation and write the event if a recording wants it
+     *
+     * @param event      what begin() returned
+     * @param generation generation count after the step
+     * @param population live cells after the step
+     * @param births     cells born
+     * @param deaths     cells killed
+     * @param allocated  bytes allocated by the evolving thread
+     */
+    static void commit(Object event, long generation, long population, long births, long deaths, long allocated) {
+        if (event == null) {
+            return;
+        }
+        try {
+            END.invoke(event);
+            if ((Boolean) SHOULD_COMMIT.invoke(event)) {
+                long[] values = { generation, population, births, deaths, allocated };
+                for (int i = 0; i < values.length; i++) {
+                    SET.invoke(event, i, values[i]);
+                }
+                COMMIT.invoke(event);
+            }
+        } catch (ReflectiveOperationException e) {
+            // the event is lost, the generation is not
+        }
+    }
+}
@@ -0,0 +1,376 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A finite width x height grid stored as flat bit rows, either wrapping around as a torus or bounded by dead cells
+ * <p>
+ * Cell (x, y), for x in [0, width) and y in [0, height), is bit x mod 64 of word x / 64 of row y; bits past the width
+ * are always 0. Every cell is stepped every generation, 64 at a time with the bit-parallel adders of
+ * {@link TiledBoard}, so a generation costs the same whatever the population. With more than one thread the rows are
+ * split into bands stepped on a pool.
+ * <p>
+ * On a torus, coordinates outside the grid wrap around onto it. With dead edges, cells outside the grid are always
+ * dead: setting them does nothing.
+ */
+public class GridBoard implements LifeEngine {
+    private static final int PARALLEL_WORDS = 1 << 14; // fewest words per band handed to a worker
+
+    private final int width, height;
+    private final boolean torus;
+    private final int words; // longs per row
+    private final int lastBit; // bit of the last column in the last word of a row
+    private final long lastMask; // bits of the last word that are on the grid
+    private long[] cells; // height rows, then a row that is always dead, read beyond dead edges
+    private long[] next; // receives the next generation, then swaps with cells
+    private long population = 0;
+    private long genCount = 0;
+    private long computeTime = 0;
+    private long cpuTime = 0;
+    private Rule rule = Rule.CONWAY;
+    private final ForkJoinPool pool; // null when evolving sequentially
+
+    /**
+     * Initialize a blank grid that evolves on the calling thread
+     *
+     * @param width  number of columns
+     * @param height number of rows
+     * @param torus  true to wrap around at the edges, false for dead cells beyond them
+     */
+    public GridBoard(int width, int height, boolean torus) {
+        this(width, height, torus, 1);
+    }
+
+    /**
+     * Initialize a blank grid
+     *
+     * @param width       number of columns
+     * @param height      number of rows
+     * @param torus       true to wrap around at the edges, false for dead cells beyond them
+     * @param parallelism number of worker threads used by evolve(); 1 evolves on the calling thread
+     */
+    public GridBoard(int width, int height, boolean torus, int parallelism) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Grid size must be at least 1x1, not " + width + "x" + height);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.width = width;
+        this.height = height;
+        this.torus = torus;
+        words = (width + 63) >>> 6;
+        if ((long) words * (height + 1) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Grid of " + width + "x" + height + " is too large");
+        }
+        lastBit = (width - 1) & 63;
+        lastMask = -1L >>> (63 - lastBit);
+        cells = new long[words * (height + 1)];
+        next = new long[words * (height + 1)];
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Getter for the width
+     *
+     * @return number of columns
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Getter for the height
+     *
+     * @return number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Check whether the grid wraps around
+     *
+     * @return true for a torus, false for dead edges
+     */
+    public boolean isTorus() {
+        return torus;
+    }
+
+    @Override
+    public boolean getCellState(Coordinate c) {
+        int i = index(c.x(), c.y());
+        return i >= 0 && (cells[i] >>> (wrap(c.x(), width) & 63) & 1) != 0;
+    }
+
+    @Override
+    public void setCellState(Coordinate c, boolean state) {
+        set(c.x(), c.y(), state);
+    }
+
+    @Override
+    public void addCells(long[] keys, int count) {
+        for (int i = 0; i < count; i++) {
+            set(Coordinate.unpackX(keys[i]), Coordinate.unpackY(keys[i]), true);
+        }
+    }
+
+    @Override
+    public CellSet getLiveCells() {
+        CellSet live = new CellSet((int) Math.min(population, Integer.MAX_VALUE >> 2));
+        for (int y = 0; y < height; y++) {
+            for (int j = 0; j < words; j++) {
+                TiledBoard.addBits(live, cells[y * words + j], (long) j << 6, y);
+            }
+        }
+        return live;
+    }
+
+    @Override
+    public CellSet copyLiveCells() {
+        return getLiveCells(); // already a fresh set
+    }
+
+    @Override
+    public long getPopulation() {
+        return population;
+    }
+
+    @Override
+    public long getGenCount() {
+        return genCount;
+    }
+
+    @Override
+    public void setGenCount(long genCount) {
+        this.genCount = genCount;
+    }
+
+    @Override
+    public long getComputeTime() {
+        return computeTime;
+    }
+
+    @Override
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public void setRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    @Override
+    public CellSet evolve() {
+        long startTime = System.nanoTime();
+        long cpuStart = PartitionedStep.threadCpuTime();
+        long workerCpuTime = step();
+        CellSet delta = new CellSet();
+        for (int y = 0; y < height; y++) {
+            for (int j = 0; j < words; j++) {
+                int i = y * words + j;
+                TiledBoard.addBits(delta, cells[i] ^ next[i], (long) j << 6, y);
+            }
+        }
+        swap();
+        computeTime = System.nanoTime() - startTime;
+        cpuTime = PartitionedStep.threadCpuTime() - cpuStart + workerCpuTime;
+        return delta;
+    }
+
+    /**
+     * Advance any number of generations without collecting their changes, which on a large grid cost far more than
+     * the stepping itself
+     *
+     * @param generations number of generations to advance
+     */
+    @Override
+    public void advance(long generations) {
+        long startTime = System.nanoTime();
+        long cpuStart = PartitionedStep.threadCpuTime();
+        long workerCpuTime = 0;
+        for (long g = 0; g < generations; g++) {
+            workerCpuTime += step();
+            swap();
+        }
+        computeTime = System.nanoTime() - startTime;
+        cpuTime = PartitionedStep.threadCpuTime() - cpuStart + workerCpuTime;
+    }
+
+    @Override
+    public CellSet clear() {
+        CellSet delta = getLiveCells();
+        Arrays.fill(cells, 0);
+        population = 0;
+        genCount = 0;
+        return delta;
+    }
+
+    /**
+     * Compute the next generation of every row into next
+     *
+     * @return CPU time spent by pool workers, in nanoseconds
+     */
+    private long step() {
+        int rowsPerBand = Math.max(1, PARALLEL_WORDS / words);
+        if (pool == null || height <= rowsPerBand) {
+            population = stepRows(0, height);
+            return 0;
+        }
+        AtomicLong nextPopulation = new AtomicLong();
+        long workerCpuTime = pool.invoke(new BandTask(0, height, rowsPerBand, nextPopulation));
+        population = nextPopulation.get();
+        return workerCpuTime;
+    }
+
+    /**
+     * Make the generation in next the current one
+     */
+    private void swap() {
+        long[] t = cells;
+        cells = next;
+        next = t;
+        genCount++;
+    }
+
+    /**
+     * Compute the next generation of a band of rows
+     *
+     * @param from first row
+     * @param to   row after the last
+     * @return population of the band in the next generation
+     */
+    private long stepRows(int from, int to) {
+        final int last = words - 1;
+        final int deadRow = height * words;
+        boolean totalistic = rule.isTotalistic();
+        int births = rule.getBirthCounts(), survivals = rule.getSurvivalCounts();
+        long count = 0;
+        for (int y = from; y < to; y++) {
+            int row = y * words;
+            int above = y + 1 < height ? row + words : torus ? 0 : deadRow;
+            int below = y > 0 ? row - words : torus ? (height - 1) * words : deadRow;
+            // each row's current word and the carry from the cell west of it, moving east one word at a time
+            long a = cells[above], m = cells[row], b = cells[below];
+            long aWest = westOfRow(above), mWest = westOfRow(row), bWest = westOfRow(below);
+            for (int j = 0; j < words; j++) {
+                long aNext, mNext, bNext, aEast, mEast, bEast;
+                if (j < last) {
+                    aNext = cells[above + j + 1];
+                    mNext = cells[row + j + 1];
+                    bNext = cells[below + j + 1];
+                    aEast = aNext << 63;
+                    mEast = mNext << 63;
+                    bEast = bNext << 63;
+                } else {
+                    aNext = mNext = bNext = 0;
+                    aEast = eastOfRow(above);
+                    mEast = eastOfRow(row);
+                    bEast = eastOfRow(below);
+                }
+                long a1 = a << 1 | aWest, a3 = a >>> 1 | aEast;
+                long m1 = m << 1 | mWest, m2 = m >>> 1 | mEast;
+                long b1 = b << 1 | bWest, b3 = b >>> 1 | bEast;
+                long n = totalistic
+                        ? TiledBoard.totalistic(births, survivals, m, a1, a, a3, m1, m2, b1, b, b3)
+                        : TiledBoard.isotropic(rule, m, a1, a, a3, m1, m2, b1, b, b3);
+                if (j == last) {
+                    n &= lastMask;
+                }
+                next[row + j] = n;
+                count += Long.bitCount(n);
+                aWest = a >>> 63;
+                mWest = m >>> 63;
+                bWest = b >>> 63;
+                a = aNext;
+                m = mNext;
+                b = bNext;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The cell west of a row's first column, as bit 0: its last column on a torus
+     */
+    private long westOfRow(int row) {
+        return torus ? cells[row + words - 1] >>> lastBit & 1 : 0;
+    }
+
+    /**
+     * The cell east of a row's last column, at the bit after that column: its first column on a torus
+     */
+    private long eastOfRow(int row) {
+        return torus ? (cells[row] & 1) << lastBit : 0;
+    }
+
+    /**
+     * Change one cell, keeping the population up to date
+     */
+    private void set(long x, long y, boolean state) {
+        int i = index(x, y);
+        if (i < 0) {
+            return;
+        }
+        long bit = 1L << (wrap(x, width) & 63);
+        if (((cells[i] & bit) != 0) != state) {
+            cells[i] ^= bit;
+            population += state ? 1 : -1;
+        }
+    }
+
+    /**
+     * Find the word holding a cell
+     *
+     * @return index into cells, or -1 if the cell is beyond a dead edge
+     */
+    private int index(long x, long y) {
+        if (!torus && (x < 0 || x >= width || y < 0 || y >= height)) {
+            return -1;
+        }
+        return (int) wrap(y, height) * words + (int) (wrap(x, width) >>> 6);
+    }
+
+    /**
+     * Bring a coordinate onto the grid, as a torus does
+     */
+    private static long wrap(long v, int size) {
+        return Math.floorMod(v, (long) size);
+    }
+
+    /**
+     * Steps a range of rows, splitting it in half until it is small enough
+     */
+    private class BandTask extends RecursiveTask<Long> {
+        private final int from, to, rowsPerBand;
+        private final AtomicLong population;
+
+        BandTask(int from, int to, int rowsPerBand, AtomicLong population) {
+            this.from = from;
+            this.to = to;
+            this.rowsPerBand = rowsPerBand;
+            this.population = population;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= rowsPerBand) {
+                long cpuStart = PartitionedStep.threadCpuTime();
+                population.addAndGet(stepRows(from, to));
+                return PartitionedStep.threadCpuTime() - cpuStart;
+            }
+            int mid = (from + to) >>> 1;
+            BandTask left = new BandTask(from, mid, rowsPerBand, population);
+            left.fork();
+            long right = new BandTask(mid, to, rowsPerBand, population).compute();
+            return right + left.join();
+        }
+    }
+}
@@ -0,0 +1,619 @@
+/**
+ * A HashLife engine: the plane is a canonical quadtree whose nodes memoize their future
+ * <p>
+ * Identical subtrees are shared (hash-consed), so repetitive patterns take little memory, and each node caches the
+ * result of advancing its center by a power of two generations. Together these let {@link #advance(long)} jump
+ * billions of generations in a handful of macro-steps.
+ * <p>
+ * The root of level L covers x and y in [-2^(L-1), 2^(L-1)), with y increasing to the north.
+ */
+public class HashLife implements LifeEngine {
+    private static final int DEFAULT_MAX_NODES = 1 << 22;
+    private static final int MIN_ROOT_LEVEL = 3;
+    private static final int MAX_ROOT_LEVEL = 62; // keeps root bounds representable as longs
+
+    private final int maxNodes;
+    private final Node dead = new Node(0, 0);
+    private final Node alive = new Node(1, 1);
+    private Node[] emptyNodes = new Node[MAX_ROOT_LEVEL + 2];
+    private Node[] table;
+    private int nodeCount;
+    private int nextId = 2;
+    private Node root;
+    private long genCount;
+    private long computeTime = 0;
+    private Rule rule = Rule.CONWAY;
+
+    /**
+     * Initialize a blank universe with the default node cache size
+     */
+    public HashLife() {
+        this(DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Initialize a blank universe
+     *
+     * @param maxNodes number of canonical nodes above which the cache is garbage collected between macro-steps
+     */
+    public HashLife(int maxNodes) {
+        this.maxNodes = maxNodes;
+        table = new Node[1024];
+        emptyNodes[0] = dead;
+        root = empty(MIN_ROOT_LEVEL);
+    }
+
+    /**
+     * Getter for cell state
+     *
+     * @param c coordinates of the cell
+     * @return current state of the cell
+     */
+    @Override
+    public boolean getCellState(Coordinate c) {
+        long half = 1L << (root.level - 1);
+        if (c.x() < -half || c.x() >= half || c.y() < -half || c.y() >= half) {
+            return false;
+        }
+        return getCell(root, c.x() + half, c.y() + half);
+    }
+
+    /**
+     * Setter for cell state
+     *
+     * @param c     coordinates of the cell
+     * @param state desired state of the cell
+     */
+    @Override
+    public void setCellState(Coordinate c, boolean state) {
+        while (!inBounds(c.x(), c.y())) {
+            grow();
+        }
+        long half = 1L << (root.level - 1);
+        root = setCell(root, c.x() + half, c.y() + half, state);
+    }
+
+    /**
+     * Collect the currently living cells
+     * <p>
+     * Coordinates are packed with {@link Coordinate#pack(long, long)}, so cells beyond the 32-bit range wrap.
+     *
+     * @return CellSet of live cells
+     */
+    @Override
+    public CellSet getLiveCells() {
+        CellSet cells = new CellSet((int) Math.min(root.population, Integer.MAX_VALUE >> 2));
+        long half = 1L << (root.level - 1);
+        collectCells(root, -half, -half, cells);
+        return cells;
+    }
+
+    /**
+     * Copy the currently living cells into a set the caller may keep
+     *
+     * @return CellSet of live cells
+     */
+    @Override
+    public CellSet copyLiveCells() {
+        return getLiveCells(); // already a fresh set
+    }
+
+    /**
+     * Getter for the number of live cells
+     *
+     * @return current population
+     */
+    @Override
+    public long getPopulation() {
+        return root.population;
+    }
+
+    /**
+     * Getter for generation count
+     *
+     * @return current generation count
+     */
+    @Override
+    public long getGenCount() {
+        return genCount;
+    }
+
+    /**
+     * Setter for generation count
+     *
+     * @param genCount new generation count
+     */
+    @Override
+    public void setGenCount(long genCount) {
+        this.genCount = genCount;
+    }
+
+    /**
+     * Getter for the rule
+     *
+     * @return the rule the universe evolves by
+     */
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Setter for the rule; memoized results belong to the old rule, so they are all dropped
+     *
+     * @param rule the rule to evolve by from now on
+     */
+    @Override
+    public void setRule(Rule rule) {
+        this.rule = rule;
+        collect();
+    }
+
+    /**
+     * Getter for compute time
+     *
+     * @return last compute time in nanoseconds
+     */
+    @Override
+    public long getComputeTime() {
+        return computeTime;
+    }
+
+    /**
+     * Getter for the number of canonical nodes currently cached
+     *
+     * @return node count
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Advance one generation
+     *
+     * @return CellSet of cells whose status has changed
+     */
+    @Override
+    public CellSet evolve() {
+        CellSet before = getLiveCells();
+        advance(1);
+        long startTime = System.nanoTime();
+        CellSet after = getLiveCells();
+        // symmetric difference of the two generations
+        CellSet delta = new CellSet(before.size() + after.size());
+        before.forEach(c -> {
+            if (!after.contains(c)) delta.add(c);
+        });
+        after.forEach(c -> {
+            if (!before.contains(c)) delta.add(c);
+        });
+        computeTime += System.nanoTime() - startTime;
+        return delta;
+    }
+
+    /**
+     * Advance any number of generations as a sequence of power-of-two macro-steps
+     *
+     * @param generations number of generations to advance
+     */
+    @Override
+    public void advance(long generations) {
+        if (generations < 0) {
+            throw new IllegalArgumentException("Cannot advance a negative number of generations");
+        }
+        long startTime = System.nanoTime();
+        for (int k = 0; generations != 0; k++, generations >>>= 1) {
+            if ((generations & 1) != 0) {
+                stepPow2(k);
+            }
+        }
+        computeTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Kill all live cells and reset counter
+     *
+     * @return CellSet of cells whose status has changed
+     */
+    @Override
+    public CellSet clear() {
+        CellSet delta = getLiveCells();
+        root = empty(MIN_ROOT_LEVEL);
+        genCount = 0;
+        collect();
+        return delta;
+    }
+
+    /**
+     * Advance 2^k generations in a single macro-step
+     *
+     * @param k base-2 logarithm of the step size
+     */
+    private void stepPow2(int k) {
+        // the pattern must sit in the center quarter of a root at least 2 levels above the step,
+        // so that nothing moving at light speed can leave the returned center half
+        while (root.level < k + 2 || !isPadded(root)) {
+            grow();
+        }
+        grow();
+        root = successor(root, k);
+        genCount += 1L << k;
+        if (nodeCount > maxNodes) {
+            collect();
+        }
+    }
+
+    /**
+     * Double the width of the root
+     */
+    private void grow() {
+        if (root.level >= MAX_ROOT_LEVEL) {
+            throw new IllegalStateException("Pattern has grown beyond the representable plane");
+        }
+        root = expand(root);
+    }
+
+    /**
+     * Compute the center of a node advanced by 2^j generations, memoized on the node
+     *
+     * @param n a node of level L >= 2
+     * @param j base-2 logarithm of the step size, at most L - 2
+     * @return the center node, of level L - 1
+     */
+    private Node successor(Node n, int j) {
+        if (n.population == 0) {
+            return empty(n.level - 1);
+        }
+        if (n.result != null && n.resultStep == j) {
+            return n.result;
+        }
+        Node result;
+        if (n.level == 2) {
+            result = baseSuccessor(n);
+        } else {
+            // nine overlapping subsquares of level L - 1
+            Node n00 = n.nw, n01 = join(n.nw.ne, n.ne.nw, n.nw.se, n.ne.sw), n02 = n.ne;
+            Node n10 = join(n.nw.sw, n.nw.se, n.sw.nw, n.sw.ne), n11 = centre(n);
+            Node n12 = join(n.ne.sw, n.ne.se, n.se.nw, n.se.ne);
+            Node n20 = n.sw, n21 = join(n.sw.ne, n.se.nw, n.sw.se, n.se.sw), n22 = n.se;
+            if (j == n.level - 2) {
+                // full step: advance each subsquare half way, then the four recombined squares the rest of the way
+                int half = j - 1;
+                n00 = successor(n00, half);
+                n01 = successor(n01, half);
+                n02 = successor(n02, half);
+                n10 = successor(n10, half);
+                n11 = successor(n11, half);
+                n12 = successor(n12, half);
+                n20 = successor(n20, half);
+                n21 = successor(n21, half);
+                n22 = successor(n22, half);
+            } else {
+                // shorter step: take the subsquares' centers as they are, then spend the whole step in the second stage
+                n00 = centre(n00);
+                n01 = centre(n01);
+                n02 = centre(n02);
+                n10 = centre(n10);
+                n11 = centre(n11);
+                n12 = centre(n12);
+                n20 = centre(n20);
+                n21 = centre(n21);
+                n22 = centre(n22);
+            }
+            int rest = j == n.level - 2 ? j - 1 : j;
+            result = join(
+                    successor(join(n00, n01, n10, n11), rest),
+                    successor(join(n01, n02, n11, n12), rest),
+                    successor(join(n10, n11, n20, n21), rest),
+                    successor(join(n11, n12, n21, n22), rest));
+        }
+        n.result = result;
+        n.resultStep = j;
+        return result;
+    }
+
+    /**
+     * Advance the center 2x2 of a 4x4 node by one generation
+     *
+     * @param n a node of level 2
+     * @return the center node, of level 1
+     */
+    private Node baseSuccessor(Node n) {
+        // bit (row * 4 + col) with row 0 at the north edge
+        int bits = 0;
+        Node[] quadrants = { n.nw, n.ne, n.sw, n.se };
+        for (int q = 0; q < 4; q++) {
+            Node quad = quadrants[q];
+            int row = (q >> 1) * 2, col = (q & 1) * 2;
+            bits |= (int) quad.nw.population << (row * 4 + col);
+            bits |= (int) quad.ne.population << (row * 4 + col + 1);
+            bits |= (int) quad.sw.population << ((row + 1) * 4 + col);
+            bits |= (int) quad.se.population << ((row + 1) * 4 + col + 1);
+        }
+        return join(nextCell(bits, 1, 1), nextCell(bits, 1, 2), nextCell(bits, 2, 1), nextCell(bits, 2, 2));
+    }
+
+    /**
+     * Apply the rule to one cell of a 4x4 bit grid
+     *
+     * @param bits the grid, bit (row * 4 + col)
+     * @param row  row of the cell
+     * @param col  column of the cell
+     * @return the leaf for the cell's next state
+     */
+    private Node nextCell(int bits, int row, int col) {
+        int mask = 0;
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                // rows count southwards, so row offset i is y-offset -i
+                mask |= (bits >> ((row + i) * 4 + col + j) & 1) << Rule.bit(j, -i);
+            }
+        }
+        return rule.next(mask) ? alive : dead;
+    }
+
+    /**
+     * Check whether every live cell of a node lies within its center half
+     *
+     * @param n the node
+     * @return true if the outer ring of grandchildren is empty
+     */
+    private boolean isPadded(Node n) {
+        return n.level >= 2 && centre(n).population == n.population;
+    }
+
+    /**
+     * Grow a node by one level, keeping it centered
+     *
+     * @param n the node
+     * @return a node twice as wide with n in its center
+     */
+    private Node expand(Node n) {
+        Node e = empty(n.level - 1);
+        return join(join(e, e, e, n.nw), join(e, e, n.ne, e), join(e, n.sw, e, e), join(n.se, e, e, e));
+    }
+
+    /**
+     * The center half of a node
+     *
+     * @param n a node of level L >= 2
+     * @return the center node, of level L - 1
+     */
+    private Node centre(Node n) {
+        return join(n.nw.se, n.ne.sw, n.sw.ne, n.se.nw);
+    }
+
+    /**
+     * Canonical empty node of a level
+     *
+     * @param level the level
+     * @return the empty node
+     */
+    private Node empty(int level) {
+        if (emptyNodes[level] == null) {
+            Node e = empty(level - 1);
+            emptyNodes[level] = join(e, e, e, e);
+        }
+        return emptyNodes[level];
+    }
+
+    /**
+     * Check whether a cell lies inside the root
+     *
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return true if the root covers the cell
+     */
+    private boolean inBounds(long x, long y) {
+        long half = 1L << (root.level - 1);
+        return x >= -half && x < half && y >= -half && y < half;
+    }
+
+    /**
+     * Look up a cell relative to a node's south-west corner
+     *
+     * @param n the node
+     * @param x x offset from the node's west edge
+     * @param y y offset from the node's south edge
+     * @return state of the cell
+     */
+    private boolean getCell(Node n, long x, long y) {
+        while (n.level > 0) {
+            if (n.population == 0) {
+                return false;
+            }
+            long half = 1L << (n.level - 1);
+            boolean east = x >= half, north = y >= half;
+            n = north ? (east ? n.ne : n.nw) : (east ? n.se : n.sw);
+            if (east) x -= half;
+            if (north) y -= half;
+        }
+        return n == alive;
+    }
+
+    /**
+     * Build a copy of a node with one cell changed
+     *
+     * @param n     the node
+     * @param x     x offset from the node's west edge
+     * @param y     y offset from the node's south edge
+     * @param state desired state of the cell
+     * @return the canonical changed node
+     */
+    private Node setCell(Node n, long x, long y, boolean state) {
+        if (n.level == 0) {
+            return state ? alive : dead;
+        }
+        long half = 1L << (n.level - 1);
+        boolean east = x >= half, north = y >= half;
+        long subX = east ? x - half : x, subY = north ? y - half : y;
+        if (north) {
+            return east ? join(n.nw, setCell(n.ne, subX, subY, state), n.sw, n.se)
+                        : join(setCell(n.nw, subX, subY, state), n.ne, n.sw, n.se);
+        }
+        return east ? join(n.nw, n.ne, n.sw, setCell(n.se, subX, subY, state))
+                    : join(n.nw, n.ne, setCell(n.sw, subX, subY, state), n.se);
+    }
+
+    /**
+     * Add the live cells of a node to a set
+     *
+     * @param n     the node
+     * @param x     x-coordinate of the node's west edge
+     * @param y     y-coordinate of the node's south edge
+     * @param cells the set to fill
+     */
+    private void collectCells(Node n, long x, long y, CellSet cells) {
+        if (n.population == 0) {
+            return;
+        }
+        if (n.level == 0) {
+            cells.add(Coordinate.pack(x, y));
+            return;
+        }
+        long half = 1L << (n.level - 1);
+        collectCells(n.nw, x, y + half, cells);
+        collectCells(n.ne, x + half, y + half, cells);
+        collectCells(n.sw, x, y, cells);
+        collectCells(n.se, x + half, y, cells);
+    }
+
+    /**
+     * Find or create the canonical node with the given children
+     *
+     * @param nw north-west child
+     * @param ne north-east child
+     * @param sw south-west child
+     * @param se south-east child
+     * @return the canonical node
+     */
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        int hash = hash(nw, ne, sw, se);
+        int bucket = hash & (table.length - 1);
+        for (Node n = table[bucket]; n != null; n = n.next) {
+            if (n.nw == nw && n.ne == ne && n.sw == sw && n.se == se) {
+                return n;
+            }
+        }
+        Node n = new Node(nw, ne, sw, se, nextId++, hash);
+        n.next = table[bucket];
+        table[bucket] = n;
+        if (++nodeCount > table.length) {
+            resize(table.length << 1);
+        }
+        return n;
+    }
+
+    /**
+     * Drop every node that the root no longer uses, along with all memoized results
+     */
+    private void collect() {
+        table = new Node[Math.max(1024, Integer.highestOneBit(Math.max(nodeCount >> 1, 1)))];
+        nodeCount = 0;
+        for (int level = 1; level < emptyNodes.length; level++) {
+            if (emptyNodes[level] != null) {
+                reinsert(emptyNodes[level]);
+            }
+        }
+        reinsert(root);
+    }
+
+    /**
+     * Put a node and its descendants back into the table, forgetting their results
+     *
+     * @param n the node
+     */
+    private void reinsert(Node n) {
+        if (n.level == 0) {
+            return;
+        }
+        int bucket = n.hash & (table.length - 1);
+        for (Node m = table[bucket]; m != null; m = m.next) {
+            if (m == n) {
+                return; // already visited through another parent
+            }
+        }
+        n.result = null;
+        n.next = table[bucket];
+        table[bucket] = n;
+        if (++nodeCount > table.length) {
+            resize(table.length << 1);
+        }
+        reinsert(n.nw);
+        reinsert(n.ne);
+        reinsert(n.sw);
+        reinsert(n.se);
+    }
+
+    /**
+     * Rehash the node table
+     *
+     * @param size new number of buckets, a power of two
+     */
+    private void resize(int size) {
+        Node[] old = table;
+        table = new Node[size];
+        for (Node head : old) {
+            for (Node n = head; n != null; ) {
+                Node next = n.next;
+                int bucket = n.hash & (size - 1);
+                n.next = table[bucket];
+                table[bucket] = n;
+                n = next;
+            }
+        }
+    }
+
+    /**
+     * Hash a tuple of children by their unique ids
+     */
+    private static int hash(Node nw, Node ne, Node sw, Node se) {
+        int h = nw.id;
+        h = h * 0x9E3779B1 + ne.id;
+        h = h * 0x9E3779B1 + sw.id;
+        h = h * 0x9E3779B1 + se.id;
+        return h ^ (h >>> 15);
+    }
+
+    /**
+     * An immutable quadtree node; level 0 nodes are single cells
+     */
+    private static final class Node {
+        final Node nw, ne, sw, se;
+        final int level;
+        final long population;
+        final int id;
+        final int hash;
+        Node next; // chain within a table bucket
+        Node result; // memoized successor...
+        int resultStep; // ...and the base-2 logarithm of the step it was computed for
+
+        /**
+         * Create a leaf
+         *
+         * @param population 1 if the cell is alive, 0 otherwise
+         * @param id         unique id
+         */
+        Node(long population, int id) {
+            nw = ne = sw = se = null;
+            level = 0;
+            this.population = population;
+            this.id = id;
+            hash = id;
+        }
+
+        /**
+         * Create an inner node
+         */
+        Node(Node nw, Node ne, Node sw, Node se, int id, int hash) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            level = nw.level + 1;
+            population = nw.population + ne.population + sw.population + se.population;
+            this.id = id;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * A latency histogram with logarithmic buckets, in the style of HdrHistogram
+ * <p>
+ * Each power of two is split into 32 linear sub-buckets, so any recorded value is known to within about 3% while the
+ * whole range of a long fits in fewer than 2000 counters. Recording takes no allocation. Methods are synchronized:
+ * one thread records while others read.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+    private long count, sum, max;
+
+    /**
+     * Record a value
+     *
+     * @param value the value, typically nanoseconds; negative values count as 0
+     */
+    public synchronized void record(long value) {
+        value = Math.max(value, 0);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Forget every value recorded so far
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = sum = max = 0;
+    }
+
+    /**
+     * Getter for the number of values
+     *
+     * @return values recorded since the last reset
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Find the value below which a given share of the recorded values fall
+     *
+     * @param percentile the share, 0 to 100
+     * @return the highest value in the bucket holding that percentile, or 0 if nothing was recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(lowest(i + 1) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Summarize the distribution
+     *
+     * @return count, mean and the usual percentiles
+     */
+    public synchronized Summary getSummary() {
+        return new Summary(count, count == 0 ? 0 : (double) sum / count, getPercentile(50), getPercentile(90),
+                getPercentile(99), getPercentile(99.9), max);
+    }
+
+    /**
+     * Bucket of a value: exact below 32, otherwise the power of two and the next five bits
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Smallest value that falls in a bucket
+     */
+    private static long lowest(int bucket) {
+        int range = bucket / SUB_BUCKETS, sub = bucket % SUB_BUCKETS;
+        if (range == 0) {
+            return sub;
+        }
+        long low = (long) (SUB_BUCKETS + sub) << (range - 1);
+        return low < 0 ? Long.MAX_VALUE : low; // past the last bucket
+    }
+
+    /**
+     * The numbers that describe a histogram at one moment, as shown in the stats panel and over JMX
+     */
+    public static final class Summary {
+        private final long count;
+        private final double mean;
+        private final long p50, p90, p99, p999, max;
+
+        Summary(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A memory-bounded history of an engine's generations, for stepping back and jumping to earlier ones
+ * <p>
+ * Every generation's delta is kept compressed with {@link CellCodec}; a delta undoes itself, since each of its cells
+ * flips. Now and then the whole board is kept as a keyframe as well, once the deltas since the last keyframe add up
+ * to its size (or to about a byte per live cell before the first), so reaching a generation never means replaying
+ * much more than one keyframe's worth of deltas. When
+ * the history outgrows its budget the oldest generations are dropped.
+ * <p>
+ * The history is only valid while the engine changes by evolving: edits, loads and rule changes must be followed by
+ * {@link #reset(LifeEngine)}. Not thread-safe; owned by the simulation thread.
+ */
+class Journal {
+    private static final int ENTRY_OVERHEAD = 48; // bytes of object headers and references per entry, roughly
+
+    private long budget;
+    private final ArrayDeque<Entry> deltas = new ArrayDeque<>(); // deltas[i] leads to generation firstGen + 1 + i
+    private final ArrayDeque<Entry> keyframes = new ArrayDeque<>();
+    private long firstGen; // oldest generation that can be reached
+    private long lastGen; // the engine's current generation
+    private long bytes = 0;
+    private long bytesSinceKeyframe = 0;
+
+    /**
+     * Create an empty journal
+     *
+     * @param budget most bytes the compressed history may take
+     */
+    Journal(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Forget the history and start over from the engine's current state
+     *
+     * @param engine the engine, as it is now
+     */
+    void reset(LifeEngine engine) {
+        deltas.clear();
+        keyframes.clear();
+        bytes = 0;
+        bytesSinceKeyframe = 0;
+        firstGen = lastGen = engine.getGenCount();
+    }
+
+    /**
+     * Change the memory budget, dropping old generations at once if the history no longer fits
+     *
+     * @param budget most bytes the compressed history may take
+     */
+    void setBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    /**
+     * Getter for the oldest generation in the history
+     *
+     * @return the earliest generation rewind() can reach
+     */
+    long getFirstGen() {
+        return firstGen;
+    }
+
+    /**
+     * Getter for the memory in use
+     *
+     * @return bytes taken by the compressed history
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Add the generation the engine just evolved into
+     *
+     * @param engine the engine, one generation after the last recorded state
+     * @param delta  cells that changed in that generation
+     */
+    void record(LifeEngine engine, CellSet delta) {
+        if (engine.getGenCount() != lastGen + 1) {
+            reset(engine);
+            return;
+        }
+        Entry entry = new Entry(lastGen + 1, delta);
+        deltas.addLast(entry);
+        bytes += entry.size();
+        bytesSinceKeyframe += entry.size();
+        lastGen++;
+        if (bytesSinceKeyframe >= (keyframes.isEmpty() ? engine.getPopulation() : keyframes.getLast().size())) {
+            addKeyframe(engine);
+        }
+        trim();
+    }
+
+    /**
+     * Bring the engine back to an earlier generation and drop the history after it
+     *
+     * @param engine     the engine, at the last recorded generation
+     * @param generation the generation to go back to, from getFirstGen() to the current one
+     * @return cells whose state changed
+     */
+    CellSet rewind(LifeEngine engine, long generation) {
+        if (generation < firstGen || generation > lastGen) {
+            throw new IllegalArgumentException("Generation " + generation + " is not in the history, which goes from "
+                    + firstGen + " to " + lastGen);
+        }
+        // the latest keyframe at or before the target, and how much replaying each way would take
+        Entry keyframe = null;
+        for (Entry k : keyframes) {
+            if (k.generation >= firstGen && k.generation <= generation) {
+                keyframe = k;
+            }
+        }
+        long backward = 0, forward = keyframe == null ? Long.MAX_VALUE : keyframe.size();
+        for (Entry d : deltas) {
+            if (d.generation > generation) {
+                backward += d.size();
+            } else if (keyframe != null && d.generation > keyframe.generation) {
+                forward += d.size();
+            }
+        }
+
+        CellSet changed;
+        CellSet flips = new CellSet();
+        if (backward <= forward) {
+            // undo the deltas after the target
+            for (Entry d : deltas) {
+                if (d.generation > generation) {
+                    d.decode((keys, count) -> flip(flips, keys, count));
+                }
+            }
+            flips.forEach(c -> engine.toggleState(Coordinate.fromKey(c)));
+            changed = flips;
+        } else {
+            // restore the keyframe and redo the deltas up to the target
+            Rule rule = engine.getRule();
+            changed = engine.clear();
+            engine.setRule(rule);
+            keyframe.decode(engine::addCells);
+            for (Entry d : deltas) {
+                if (d.generation > keyframe.generation && d.generation <= generation) {
+                    d.decode((keys, count) -> flip(flips, keys, count));
+                }
+            }
+            flips.forEach(c -> engine.toggleState(Coordinate.fromKey(c)));
+            // cells live both before and after did not change
+            engine.getLiveCells().forEach(changed::toggle);
+        }
+        engine.setGenCount(generation);
+
+        // the future from here is recomputed by evolving again
+        while (!deltas.isEmpty() && deltas.getLast().generation > generation) {
+            bytes -= deltas.removeLast().size();
+        }
+        while (!keyframes.isEmpty() && keyframes.getLast().generation > generation) {
+            bytes -= keyframes.removeLast().size();
+        }
+        lastGen = generation;
+        bytesSinceKeyframe = 0;
+        for (Entry d : deltas) {
+            if (keyframes.isEmpty() || d.generation > keyframes.getLast().generation) {
+                bytesSinceKeyframe += d.size();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Keep the whole board of the current generation
+     */
+    private void addKeyframe(LifeEngine engine) {
+        Entry keyframe = new Entry(lastGen, engine.getLiveCells());
+        keyframes.addLast(keyframe);
+        bytes += keyframe.size();
+        bytesSinceKeyframe = 0;
+    }
+
+    /**
+     * Drop the oldest generations until the history fits its budget
+     */
+    private void trim() {
+        while (bytes > budget && !deltas.isEmpty()) {
+            bytes -= deltas.removeFirst().size();
+            firstGen++;
+            // a keyframe before the oldest generation can no longer be reached or replayed from
+            while (!keyframes.isEmpty() && keyframes.getFirst().generation < firstGen) {
+                bytes -= keyframes.removeFirst().size();
+            }
+        }
+    }
+
+    /**
+     * Flip a batch of cells in a set, composing deltas
+     */
+    private static void flip(CellSet cells, long[] keys, int count) {
+        for (int i = 0; i < count; i++) {
+            cells.toggle(keys[i]);
+        }
+    }
+
+    /**
+     * A compressed set of cells: the delta leading to a generation, or the whole board at a keyframe
+     */
+    private static class Entry {
+        final long generation;
+        final long blockCount;
+        final byte[] data;
+
+        Entry(long generation, CellSet cells) {
+            this.generation = generation;
+            long[] order = CellCodec.sort(cells);
+            blockCount = CellCodec.blockCount(order);
+            data = new byte[(int) CellCodec.size(order)];
+            CellCodec.write(ByteBuffer.wrap(data), order);
+        }
+
+        /**
+         * Memory taken, counted against the budget
+         */
+        long size() {
+            return data.length + ENTRY_OVERHEAD;
+        }
+
+        /**
+         * Hand the cells to a sink in batches
+         */
+        void decode(CellCodec.Sink sink) {
+            try {
+                CellCodec.read(ByteBuffer.wrap(data), blockCount, sink);
+            } catch (IOException e) {
+                throw new IllegalStateException("Journal entry for generation " + generation + " is corrupt", e);
+            }
+        }
+    }
+}
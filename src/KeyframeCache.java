@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Whole-board keyframes of a run, for jumping to any generation reached since the run started, forward or back
+ * <p>
+ * Unlike {@link Journal}, which keeps every generation near the current one, this keeps a sparse timeline of the
+ * whole run. A keyframe is taken once the engine has spent {@value #REPLAY_NANOS} nanoseconds evolving since the
+ * last one, so keyframes are generations apart for a small or fast pattern and close together for a large or slow
+ * one, and reaching a generation never replays much more than that. A jump restores the nearest keyframe at or
+ * before the target, or stays put if the current generation is nearer, and then evolves the rest of the way with
+ * {@link #advance(LifeEngine, long)}, which the caller may split into steps of its own so that a long way forward
+ * can be watched and called off. Going back does not drop anything: the run is deterministic, so keyframes after the
+ * target still hold.
+ * <p>
+ * Keyframes are compressed with {@link CellCodec}. The least recently used ones are written to a temporary directory
+ * when the memory budget runs out, and read back when needed; when the disk budget runs out too, the least recently
+ * used keyframes on disk are dropped, and the start of the timeline may move up with them.
+ * <p>
+ * The keyframes are only valid while the engine changes by evolving: edits, loads and rule changes must be followed
+ * by {@link #reset(LifeEngine)}. Not thread-safe; owned by the simulation thread.
+ */
+class KeyframeCache {
+    static final long REPLAY_NANOS = 200_000_000L; // evolving time between keyframes, bounding the replay of a jump
+
+    private final long memoryBudget;
+    private final long diskBudget;
+    private final TreeMap<Long, Keyframe> keyframes = new TreeMap<>();
+    // least recently used first
+    private final LinkedHashMap<Long, Keyframe> inMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, Keyframe> onDisk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+    private long sinceKeyframe = 0; // nanoseconds spent evolving since the last keyframe passed
+    private long lastGen; // furthest generation reached
+    private Path spillDirectory; // created on the first spill
+
+    /**
+     * Create an empty cache
+     *
+     * @param memoryBudget most bytes the keyframes kept in memory may take
+     * @param diskBudget   most bytes the keyframes written to disk may take
+     */
+    KeyframeCache(long memoryBudget, long diskBudget) {
+        this.memoryBudget = memoryBudget;
+        this.diskBudget = diskBudget;
+    }
+
+    /**
+     * Forget every keyframe and start a new timeline with the engine's current state
+     *
+     * @param engine the engine, as it is now
+     */
+    void reset(LifeEngine engine) {
+        for (Keyframe keyframe : keyframes.values()) {
+            keyframe.deleteFile();
+        }
+        keyframes.clear();
+        inMemory.clear();
+        onDisk.clear();
+        memoryBytes = 0;
+        diskBytes = 0;
+        lastGen = engine.getGenCount();
+        addKeyframe(engine);
+    }
+
+    /**
+     * Getter for the start of the timeline
+     *
+     * @return the earliest generation restore() can reach
+     */
+    long getFirstGen() {
+        return keyframes.isEmpty() ? lastGen : keyframes.firstKey();
+    }
+
+    /**
+     * Getter for the end of the timeline
+     *
+     * @return the furthest generation the engine has reached since the last reset
+     */
+    long getLastGen() {
+        return lastGen;
+    }
+
+    /**
+     * Note a generation the engine just evolved into, taking a keyframe if it is time to
+     *
+     * @param engine      the engine, one generation after the last
+     * @param computeTime nanoseconds that generation took
+     */
+    void record(LifeEngine engine, long computeTime) {
+        long gen = engine.getGenCount();
+        lastGen = Math.max(lastGen, gen);
+        sinceKeyframe += computeTime;
+        if (keyframes.containsKey(gen)) {
+            // evolving again over a stretch already covered
+            sinceKeyframe = 0;
+        } else if (sinceKeyframe >= REPLAY_NANOS) {
+            addKeyframe(engine);
+        }
+    }
+
+    /**
+     * Bring the engine to the nearest keyframe at or before a generation, unless it is already nearer
+     *
+     * @param engine     the engine
+     * @param generation the generation to go towards, getFirstGen() or later
+     * @return cells whose state changed, empty if the engine stayed put
+     */
+    CellSet restore(LifeEngine engine, long generation) {
+        if (generation < getFirstGen()) {
+            throw new IllegalArgumentException("Generation " + generation + " is before the timeline, which starts at "
+                    + getFirstGen());
+        }
+        long current = engine.getGenCount();
+        Map.Entry<Long, Keyframe> floor = keyframes.floorEntry(generation);
+        if (current <= generation && (floor == null || current >= floor.getKey())) {
+            // evolving on from here is no further than from the keyframe
+            return new CellSet();
+        }
+        byte[] data = null;
+        while (data == null) {
+            if (floor == null) {
+                throw new IllegalStateException("No keyframe left before generation " + generation);
+            }
+            data = load(floor.getValue());
+            if (data == null) {
+                // its file could not be read and the keyframe was dropped, so try the one before
+                floor = keyframes.floorEntry(generation);
+            }
+        }
+        Rule rule = engine.getRule();
+        CellSet changed = engine.clear();
+        engine.setRule(rule);
+        floor.getValue().decode(data, engine::addCells);
+        engine.setGenCount(floor.getKey());
+        // cells live both before and after did not change
+        engine.getLiveCells().forEach(changed::toggle);
+        sinceKeyframe = 0;
+        return changed;
+    }
+
+    /**
+     * Evolve the engine some generations at once, as part of a jump, taking a keyframe after them if it is time to
+     *
+     * @param engine      the engine
+     * @param generations number of generations to advance
+     */
+    void advance(LifeEngine engine, long generations) {
+        long start = System.nanoTime();
+        engine.advance(generations);
+        sinceKeyframe += System.nanoTime() - start;
+        long gen = engine.getGenCount();
+        lastGen = Math.max(lastGen, gen);
+        if (keyframes.containsKey(gen)) {
+            sinceKeyframe = 0;
+        } else if (sinceKeyframe >= REPLAY_NANOS) {
+            // the next jump near here should not replay all that again
+            addKeyframe(engine);
+        }
+    }
+
+    /**
+     * Keep the whole board of the current generation
+     */
+    private void addKeyframe(LifeEngine engine) {
+        Keyframe keyframe = new Keyframe(engine.getGenCount(), engine.getLiveCells());
+        keyframes.put(keyframe.generation, keyframe);
+        inMemory.put(keyframe.generation, keyframe);
+        memoryBytes += keyframe.size;
+        sinceKeyframe = 0;
+        trimMemory();
+    }
+
+    /**
+     * Get a keyframe's cells, reading them back into memory if they were spilled
+     *
+     * @return the encoded cells, or null if the file could not be read, in which case the keyframe is dropped
+     */
+    private byte[] load(Keyframe keyframe) {
+        if (keyframe.data != null) {
+            inMemory.get(keyframe.generation); // now the most recently used
+            return keyframe.data;
+        }
+        onDisk.remove(keyframe.generation);
+        diskBytes -= keyframe.size;
+        try {
+            keyframe.data = Files.readAllBytes(keyframe.file);
+        } catch (IOException e) {
+            keyframes.remove(keyframe.generation);
+            return null;
+        } finally {
+            keyframe.deleteFile();
+        }
+        inMemory.put(keyframe.generation, keyframe);
+        memoryBytes += keyframe.size;
+        trimMemory();
+        return keyframe.data;
+    }
+
+    /**
+     * Spill the least recently used keyframes until the rest fit the memory budget, keeping at least the newest one
+     */
+    private void trimMemory() {
+        Iterator<Keyframe> lru = inMemory.values().iterator();
+        while (memoryBytes > memoryBudget && inMemory.size() > 1) {
+            Keyframe keyframe = lru.next();
+            lru.remove();
+            memoryBytes -= keyframe.size;
+            if (keyframe.size <= diskBudget && spill(keyframe)) {
+                onDisk.put(keyframe.generation, keyframe);
+                diskBytes += keyframe.size;
+            } else {
+                keyframes.remove(keyframe.generation);
+            }
+        }
+        Iterator<Keyframe> lruOnDisk = onDisk.values().iterator();
+        while (diskBytes > diskBudget) {
+            Keyframe keyframe = lruOnDisk.next();
+            lruOnDisk.remove();
+            diskBytes -= keyframe.size;
+            keyframe.deleteFile();
+            keyframes.remove(keyframe.generation);
+        }
+    }
+
+    /**
+     * Move a keyframe's cells from memory to a file
+     *
+     * @return false if the file could not be written, in which case the keyframe is lost
+     */
+    private boolean spill(Keyframe keyframe) {
+        try {
+            if (spillDirectory == null) {
+                spillDirectory = Files.createTempDirectory("jgol-keyframes");
+                spillDirectory.toFile().deleteOnExit();
+            }
+            keyframe.file = spillDirectory.resolve(keyframe.generation + ".cells");
+            Files.write(keyframe.file, keyframe.data);
+            keyframe.file.toFile().deleteOnExit();
+            keyframe.data = null;
+            return true;
+        } catch (IOException e) {
+            keyframe.deleteFile();
+            return false;
+        }
+    }
+
+    /**
+     * The live cells of one generation, compressed, in memory or in a file
+     */
+    private static class Keyframe {
+        final long generation;
+        final long blockCount;
+        final int size;
+        byte[] data; // null while spilled
+        Path file; // null while in memory
+
+        Keyframe(long generation, CellSet cells) {
+            this.generation = generation;
+            long[] order = CellCodec.sort(cells);
+            blockCount = CellCodec.blockCount(order);
+            data = new byte[(int) CellCodec.size(order)];
+            CellCodec.write(ByteBuffer.wrap(data), order);
+            size = data.length;
+        }
+
+        /**
+         * Hand the cells to a sink in batches
+         */
+        void decode(byte[] data, CellCodec.Sink sink) {
+            try {
+                CellCodec.read(ByteBuffer.wrap(data), blockCount, sink);
+            } catch (IOException e) {
+                throw new IllegalStateException("Keyframe of generation " + generation + " is corrupt", e);
+            }
+        }
+
+        void deleteFile() {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // deleted on exit instead
+                }
+                file = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Operations the UI needs from a Game of Life engine
+ * <p>
+ * Cell sets handed out by an engine use packed coordinates (see {@link Coordinate#pack(long, long)}).
+ */
+public interface LifeEngine {
+    /**
+     * Getter for cell state
+     *
+     * @param c coordinates of the cell
+     * @return current state of the cell
+     */
+    boolean getCellState(Coordinate c);
+
+    /**
+     * Setter for cell state
+     *
+     * @param c     coordinates of the cell
+     * @param state desired state of the cell
+     */
+    void setCellState(Coordinate c, boolean state);
+
+    /**
+     * Flip the cell's state
+     *
+     * @param c coordinates of the cell
+     */
+    default void toggleState(Coordinate c) {
+        setCellState(c, !getCellState(c));
+    }
+
+    /**
+     * Bring a batch of cells to life, as when loading a pattern
+     *
+     * @param keys  packed coordinates of the cells
+     * @param count number of keys to take from the start of the array
+     */
+    default void addCells(long[] keys, int count) {
+        for (int i = 0; i < count; i++) {
+            setCellState(Coordinate.fromKey(keys[i]), true);
+        }
+    }
+
+    /**
+     * Getter for currently living cells
+     *
+     * @return CellSet of live cells
+     */
+    CellSet getLiveCells();
+
+    /**
+     * Getter for the number of live cells
+     *
+     * @return current population
+     */
+    default long getPopulation() {
+        return getLiveCells().size();
+    }
+
+    /**
+     * Get the currently living cells as a set the caller may keep, copying them unless the engine can share an
+     * unchanging generation
+     *
+     * @return CellSet of live cells, unaffected by later changes to the engine; do not modify
+     */
+    default CellSet copyLiveCells() {
+        return getLiveCells().copy();
+    }
+
+    /**
+     * Getter for generation count
+     *
+     * @return current generation count
+     */
+    long getGenCount();
+
+    /**
+     * Setter for generation count, as when resuming from a checkpoint
+     *
+     * @param genCount new generation count
+     */
+    void setGenCount(long genCount);
+
+    /**
+     * Getter for compute time
+     *
+     * @return last compute time in nanoseconds
+     */
+    long getComputeTime();
+
+    /**
+     * Getter for CPU time, which exceeds compute time when an engine evolves on several threads
+     *
+     * @return CPU time of the last generation summed over all threads, in nanoseconds; 0 for engines that measure
+     *         it themselves when the JVM cannot
+     */
+    default long getCpuTime() {
+        return getComputeTime();
+    }
+
+    /**
+     * Getter for the rule
+     *
+     * @return the rule the engine evolves by
+     */
+    Rule getRule();
+
+    /**
+     * Setter for the rule, which applies from the next generation on
+     *
+     * @param rule the new rule
+     */
+    void setRule(Rule rule);
+
+    /**
+     * Apply the rule to each cell, update generation count
+     *
+     * @return CellSet of cells whose status has changed
+     */
+    CellSet evolve();
+
+    /**
+     * Advance any number of generations, for when the changes of each one are not needed; engines that can skip
+     * ahead faster than one generation at a time override this
+     *
+     * @param generations number of generations to advance
+     */
+    default void advance(long generations) {
+        for (long g = 0; g < generations; g++) {
+            evolve();
+        }
+    }
+
+    /**
+     * Kill all live cells and reset counter
+     *
+     * @return CellSet of cells whose status has changed
+     */
+    CellSet clear();
+}
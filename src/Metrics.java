@@ -0,0 +1,197 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Per-generation measurements of a simulation: latency histograms for evolving, refreshing and rendering, and the
+ * population, births, deaths, allocation and bounding box of the most recent generation, along with the memory in use
+ * <p>
+ * Generations are measured around the engine's evolve(), so every engine is covered the same way, and each one is
+ * also emitted as a Flight Recorder event (see {@link GenerationEvents}). The values can be read from any thread,
+ * in process or over JMX once {@link #register()} is called.
+ */
+public class Metrics implements MetricsMXBean {
+    static final String OBJECT_NAME = "JGoL:type=Metrics";
+    private static final long BOX_INTERVAL = 250_000_000L; // shortest time between bounding box samples, nanoseconds
+    private static final int BOX_COST_RATIO = 20; // keep sampling the bounding box under 5% of the time
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final Histogram evolveLatency = new Histogram();
+    private final Histogram refreshLatency = new Histogram();
+    private final Histogram renderLatency = new Histogram();
+    private volatile long generations, population, births, deaths, allocated;
+    private volatile long[] boundingBox = new long[0];
+
+    // only touched on the evolving thread
+    private long nextBoxTime = 0;
+
+    /**
+     * Evolve an engine one generation, measuring it
+     *
+     * @param engine the engine
+     * @return what engine.evolve() returned
+     */
+    public CellSet evolve(LifeEngine engine) {
+        long populationBefore = engine.getPopulation();
+        Object event = GenerationEvents.begin();
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        CellSet delta = engine.evolve();
+        long endTime = System.nanoTime();
+        long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+
+        evolveLatency.record(endTime - startTime);
+        long populationAfter = engine.getPopulation();
+        // the delta holds births + deaths cells, and the population grew by births - deaths
+        long born = (delta.size() + populationAfter - populationBefore) / 2;
+        population = populationAfter;
+        births = born;
+        deaths = delta.size() - born;
+        allocated = bytes;
+        generations++;
+        GenerationEvents.commit(event, engine.getGenCount(), populationAfter, born, delta.size() - born, bytes);
+
+        if (endTime >= nextBoxTime) {
+            boundingBox = boundingBox(engine.getLiveCells());
+            long cost = System.nanoTime() - endTime;
+            nextBoxTime = endTime + Math.max(BOX_INTERVAL, cost * BOX_COST_RATIO);
+        }
+        return delta;
+    }
+
+    /**
+     * Record the time taken to paint the changes of a snapshot
+     *
+     * @param nanos elapsed nanoseconds
+     */
+    public void recordRefresh(long nanos) {
+        refreshLatency.record(nanos);
+    }
+
+    /**
+     * Record the time taken to redraw the whole visible area
+     *
+     * @param nanos elapsed nanoseconds
+     */
+    public void recordRender(long nanos) {
+        renderLatency.record(nanos);
+    }
+
+    @Override
+    public long getGenerations() {
+        return generations;
+    }
+
+    @Override
+    public long getPopulation() {
+        return population;
+    }
+
+    @Override
+    public long getBirths() {
+        return births;
+    }
+
+    @Override
+    public long getDeaths() {
+        return deaths;
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocated;
+    }
+
+    @Override
+    public long[] getBoundingBox() {
+        return boundingBox.clone();
+    }
+
+    @Override
+    public long getHeapBytes() {
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public long getOffHeapBytes() {
+        return OffHeapArena.totalBytes();
+    }
+
+    @Override
+    public Histogram.Summary getEvolveLatency() {
+        return evolveLatency.getSummary();
+    }
+
+    @Override
+    public Histogram.Summary getRefreshLatency() {
+        return refreshLatency.getSummary();
+    }
+
+    @Override
+    public Histogram.Summary getRenderLatency() {
+        return renderLatency.getSummary();
+    }
+
+    @Override
+    public void reset() {
+        evolveLatency.reset();
+        refreshLatency.reset();
+        renderLatency.reset();
+        generations = 0;
+    }
+
+    /**
+     * Publish these metrics over JMX as {@value #OBJECT_NAME}, replacing any registered before
+     *
+     * @throws IllegalStateException if the platform MBean server refuses them
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics with JMX", e);
+        }
+    }
+
+    /**
+     * Bytes allocated so far by the calling thread
+     *
+     * @return allocated bytes, or -1 if the JVM cannot tell
+     */
+    static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Find the smallest rectangle holding a set of cells
+     *
+     * @param cells the cells
+     * @return min x, min y, max x and max y, or an empty array if there are no cells
+     */
+    private static long[] boundingBox(CellSet cells) {
+        if (cells.isEmpty()) {
+            return new long[0];
+        }
+        long[] box = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+        cells.forEach(c -> {
+            long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+            box[0] = Math.min(box[0], x);
+            box[1] = Math.min(box[1], y);
+            box[2] = Math.max(box[2], x);
+            box[3] = Math.max(box[3], y);
+        });
+        return box;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * The metrics of a running simulation as seen over JMX, under the name "JGoL:type=Metrics"
+ * <p>
+ * Times are in nanoseconds. Per-generation values describe the most recent generation.
+ */
+public interface MetricsMXBean {
+    /**
+     * @return generations recorded since the last reset
+     */
+    long getGenerations();
+
+    /**
+     * @return live cells after the most recent generation
+     */
+    long getPopulation();
+
+    /**
+     * @return cells born in the most recent generation
+     */
+    long getBirths();
+
+    /**
+     * @return cells killed in the most recent generation
+     */
+    long getDeaths();
+
+    /**
+     * @return bytes allocated by the evolving thread during the most recent generation, or -1 if the JVM cannot tell
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return min x, min y, max x and max y of the live cells, sampled every so often; empty when there are none
+     */
+    long[] getBoundingBox();
+
+    /**
+     * @return bytes of heap in use
+     */
+    long getHeapBytes();
+
+    /**
+     * @return bytes of native memory held by off-heap cell storage
+     */
+    long getOffHeapBytes();
+
+    /**
+     * @return time spent in evolve()
+     */
+    Histogram.Summary getEvolveLatency();
+
+    /**
+     * @return time spent painting the changed cells of a snapshot
+     */
+    Histogram.Summary getRefreshLatency();
+
+    /**
+     * @return time spent redrawing the whole visible area
+     */
+    Histogram.Summary getRenderLatency();
+
+    /**
+     * Forget everything recorded so far
+     */
+    void reset();
+}
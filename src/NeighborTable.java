@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/**
+ * A reusable table from packed cell coordinates to small accumulated counts
+ * <p>
+ * Open addressing with linear probing; a slot whose value is 0 is empty, so only positive amounts may be added.
+ * Entries are visited by slot index ({@link #capacity()}, {@link #keyAt(int)}, {@link #valueAt(int)}) to avoid a
+ * callback per entry.
+ */
+class NeighborTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private final long seed = CellSet.nextSeed(); // see CellSet.seed
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int shift;
+    private int size;
+
+    /**
+     * Create an empty table
+     */
+    NeighborTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Empty the table and make sure it can take a number of entries without resizing
+     *
+     * @param expected upper bound on the number of entries about to be added
+     */
+    void reset(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 1 < expected) {
+            capacity <<= 1;
+        }
+        // reuse the current arrays unless they are too small or far too large for this generation
+        if (capacity > keys.length || capacity < keys.length >> 2) {
+            allocate(capacity);
+        } else {
+            Arrays.fill(values, 0);
+        }
+        size = 0;
+    }
+
+    /**
+     * Add to the value stored for a cell, creating the entry if needed
+     *
+     * @param key    packed coordinates of the cell
+     * @param amount positive amount to add
+     */
+    void add(long key, int amount) {
+        int i = (int) (CellSet.mix(key ^ seed) >>> shift);
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                values[i] += amount;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = amount;
+        if (++size > (mask + 1) >> 1) {
+            rehash((mask + 1) << 1);
+        }
+    }
+
+    /**
+     * Getter for the value stored for a cell
+     *
+     * @param key packed coordinates of the cell
+     * @return accumulated value, or 0 if the cell has no entry
+     */
+    int get(long key) {
+        for (int i = (int) (CellSet.mix(key ^ seed) >>> shift); values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Getter for the number of slots
+     *
+     * @return number of slots, some of which may be empty
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Getter for the key in a slot
+     *
+     * @param slot slot index
+     * @return packed coordinates, meaningless if the slot is empty
+     */
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Getter for the value in a slot
+     *
+     * @param slot slot index
+     * @return accumulated value, or 0 if the slot is empty
+     */
+    int valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Move every entry into a table of a new size
+     *
+     * @param capacity new table size, a power of two
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != 0) {
+                int i = (int) (CellSet.mix(oldKeys[j] ^ seed) >>> shift);
+                while (values[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Replace the table with an empty one
+     *
+     * @param capacity table size, a power of two
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+}
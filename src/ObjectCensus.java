@@ -0,0 +1,276 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the objects left over by settled patterns, by canonical name, from any number of threads
+ * <p>
+ * The cells are split into objects, cells no more than two apart in either direction belonging to the same one, so
+ * objects close enough to interact are counted together. Each object is run on its own until it returns to its
+ * starting shape, possibly moved, and named by its apgcode: xs followed by the population for a still life, xp or xq
+ * followed by the period for an oscillator or a spaceship, then the shortest, and of those the first, extended
+ * Wechsler encoding of any of its phases in any orientation. This matches the names used by Catagolue, such as xs4_33
+ * for the block and xq4_153 for the glider. Objects that do not return within {@value #MAX_PERIOD} generations are
+ * counted as {@value #UNCLASSIFIED}.
+ * <p>
+ * Names are cached by shape, so each shape is only run once however many threads meet it.
+ */
+class ObjectCensus {
+    static final int MAX_PERIOD = 60;
+    static final String UNCLASSIFIED = "zz_UNCLASSIFIED";
+    private static final int REACH = 2; // cells this close in both directions belong to the same object
+    private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private final Rule rule;
+    private final ConcurrentHashMap<Shape, String> names = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty census
+     *
+     * @param rule the rule the objects evolve by
+     */
+    ObjectCensus(Rule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Split settled cells into objects and count each one
+     *
+     * @param cells the live cells of a pattern that has settled
+     */
+    void add(CellSet cells) {
+        for (long[] object : split(cells.toArray())) {
+            String name = names.computeIfAbsent(new Shape(normalize(object)), s -> classify(s.cells));
+            counts.computeIfAbsent(name, n -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Getter for the counts so far
+     *
+     * @return number of objects seen by name, sorted by name
+     */
+    Map<String, Long> getCounts() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        counts.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+
+    /**
+     * Getter for the number of distinct shapes named so far
+     *
+     * @return size of the name cache
+     */
+    int getShapeCount() {
+        return names.size();
+    }
+
+    /**
+     * Name an object by running it on its own
+     *
+     * @param object packed coordinates of its cells, normalized
+     * @return its apgcode, or {@value #UNCLASSIFIED}
+     */
+    private String classify(long[] object) {
+        Board board = new Board();
+        board.setRule(rule);
+        board.addCells(object, object.length);
+        ArrayList<long[]> phases = new ArrayList<>();
+        phases.add(object);
+        long x0 = minX(object), y0 = minY(object);
+        for (int period = 1; period <= MAX_PERIOD; period++) {
+            board.evolve();
+            long[] cells = board.getLiveCells().toArray();
+            if (cells.length == 0 || cells.length > object.length * 4) {
+                return UNCLASSIFIED; // died or grew, so not an object on its own
+            }
+            Arrays.sort(cells);
+            long[] phase = normalize(cells);
+            if (Arrays.equals(phase, object)) {
+                boolean moved = minX(cells) != x0 || minY(cells) != y0;
+                String prefix = moved ? "xq" + period : period == 1 ? "xs" + object.length : "xp" + period;
+                return prefix + "_" + canonicalCode(phases);
+            }
+            phases.add(phase);
+        }
+        return UNCLASSIFIED;
+    }
+
+    /**
+     * The preferred encoding of an object over all its phases and orientations
+     *
+     * @param phases normalized cells of every phase
+     * @return the shortest encoding, the first in order among equally short ones
+     */
+    private static String canonicalCode(ArrayList<long[]> phases) {
+        String best = null;
+        for (long[] phase : phases) {
+            for (int t = 0; t < 8; t++) {
+                long[] cells = new long[phase.length];
+                for (int i = 0; i < phase.length; i++) {
+                    long x = Coordinate.unpackX(phase[i]), y = Coordinate.unpackY(phase[i]);
+                    long u = (t & 4) != 0 ? y : x, v = (t & 4) != 0 ? x : y;
+                    cells[i] = Coordinate.pack((t & 1) != 0 ? -u : u, (t & 2) != 0 ? -v : v);
+                }
+                Arrays.sort(cells);
+                String code = wechsler(normalize(cells));
+                if (best == null || code.length() < best.length()
+                        || code.length() == best.length() && code.compareTo(best) < 0) {
+                    best = code;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Extended Wechsler encoding of a normalized object
+     * <p>
+     * The rows are cut into strips of five, separated by z. Each column of a strip is one character giving its five
+     * cells as bits, the first row being bit 0; runs of empty columns are shortened to w (two), x (three) or y and a
+     * count (four or more), and empty columns at the end of a strip are left out.
+     *
+     * @param cells packed coordinates, normalized
+     * @return the encoding
+     */
+    static String wechsler(long[] cells) {
+        int width = 0, height = 0;
+        for (long c : cells) {
+            width = Math.max(width, (int) Coordinate.unpackX(c) + 1);
+            height = Math.max(height, (int) Coordinate.unpackY(c) + 1);
+        }
+        int strips = (height + 4) / 5;
+        int[][] columns = new int[strips][width];
+        for (long c : cells) {
+            int x = (int) Coordinate.unpackX(c), y = (int) Coordinate.unpackY(c);
+            columns[y / 5][x] |= 1 << (y % 5);
+        }
+        StringBuilder code = new StringBuilder();
+        for (int s = 0; s < strips; s++) {
+            if (s > 0) {
+                code.append('z');
+            }
+            int zeros = 0;
+            for (int column : columns[s]) {
+                if (column == 0) {
+                    zeros++;
+                    continue;
+                }
+                for (; zeros > 0; zeros -= Math.min(zeros, 39)) {
+                    int run = Math.min(zeros, 39);
+                    code.append(run == 1 ? "0" : run == 2 ? "w" : run == 3 ? "x" : "y" + DIGITS.charAt(run - 4));
+                }
+                code.append(DIGITS.charAt(column));
+            }
+        }
+        return code.toString();
+    }
+
+    /**
+     * Group cells into objects
+     *
+     * @param cells packed coordinates of the cells
+     * @return the cells of each object, sorted
+     */
+    private static ArrayList<long[]> split(long[] cells) {
+        Arrays.sort(cells);
+        // union-find over indices into the sorted cells
+        int[] parent = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < cells.length; i++) {
+            long x = Coordinate.unpackX(cells[i]), y = Coordinate.unpackY(cells[i]);
+            for (int dx = -REACH; dx <= REACH; dx++) {
+                for (int dy = -REACH; dy <= REACH; dy++) {
+                    int j = Arrays.binarySearch(cells, Coordinate.pack(x + dx, y + dy));
+                    if (j > i) {
+                        parent[find(parent, j)] = find(parent, i);
+                    }
+                }
+            }
+        }
+        int[] sizes = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            sizes[find(parent, i)]++;
+        }
+        long[][] objects = new long[cells.length][];
+        int[] filled = new int[cells.length];
+        ArrayList<long[]> result = new ArrayList<>();
+        for (int i = 0; i < cells.length; i++) {
+            int root = find(parent, i);
+            if (objects[root] == null) {
+                objects[root] = new long[sizes[root]];
+                result.add(objects[root]);
+            }
+            objects[root][filled[root]++] = cells[i]; // in sorted order
+        }
+        return result;
+    }
+
+    /**
+     * Find the representative of an index, halving paths along the way
+     */
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Move cells so that their bounding box starts at (0, 0)
+     *
+     * @param cells packed coordinates, sorted
+     * @return the moved cells, sorted
+     */
+    private static long[] normalize(long[] cells) {
+        long x0 = minX(cells), y0 = minY(cells);
+        long[] moved = new long[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            moved[i] = Coordinate.pack(Coordinate.unpackX(cells[i]) - x0, Coordinate.unpackY(cells[i]) - y0);
+        }
+        Arrays.sort(moved); // y sorts as unsigned, so moving across 0 can change the order
+        return moved;
+    }
+
+    private static long minX(long[] cells) {
+        return Coordinate.unpackX(cells[0]); // sorted by x first
+    }
+
+    private static long minY(long[] cells) {
+        long min = Long.MAX_VALUE;
+        for (long c : cells) {
+            min = Math.min(min, Coordinate.unpackY(c));
+        }
+        return min;
+    }
+
+    /**
+     * Normalized cells of an object, as a cache key
+     */
+    private static final class Shape {
+        final long[] cells;
+        private final int hash;
+
+        Shape(long[] cells) {
+            this.cells = cells;
+            hash = Arrays.hashCode(cells);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Shape && Arrays.equals(cells, ((Shape) o).cells);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Native memory outside the Java heap, handed out as direct buffers and freed together when the arena is closed
+ * <p>
+ * Memory is released at once on {@link #free(ByteBuffer)} or {@link #close()} rather than whenever the garbage
+ * collector finds the buffer unreachable, so dropping a large board costs no collection. If the JVM does not let
+ * buffers be freed early, or an arena is never closed, the collector frees them as usual. Direct memory is capped by
+ * {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size. Not thread-safe.
+ */
+final class OffHeapArena implements AutoCloseable {
+    private static final AtomicLong TOTAL_BYTES = new AtomicLong();
+    private static final Method INVOKE_CLEANER; // Unsafe.invokeCleaner(ByteBuffer) on Java 9 and later
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8: buffers are freed through their cleaner instead
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private final IdentityHashMap<ByteBuffer, Boolean> buffers = new IdentityHashMap<>();
+    private long bytes = 0;
+    private boolean closed = false;
+
+    /**
+     * Getter for the native memory held by every open arena
+     *
+     * @return bytes allocated and not yet freed
+     */
+    static long totalBytes() {
+        return TOTAL_BYTES.get();
+    }
+
+    /**
+     * Allocate zeroed memory
+     *
+     * @param size number of bytes, at most Integer.MAX_VALUE
+     * @return a direct buffer in native byte order, valid until freed or until the arena is closed
+     * @throws IllegalStateException if the arena is closed
+     * @throws OutOfMemoryError      if the direct memory limit is reached
+     */
+    ByteBuffer allocate(int size) {
+        if (closed) {
+            throw new IllegalStateException("Arena is closed");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        buffers.put(buffer, Boolean.TRUE);
+        bytes += size;
+        TOTAL_BYTES.addAndGet(size);
+        return buffer;
+    }
+
+    /**
+     * Free one buffer before the arena is closed; it must not be used again
+     *
+     * @param buffer a buffer allocated by this arena
+     */
+    void free(ByteBuffer buffer) {
+        if (buffers.remove(buffer) != null) {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Getter for the memory held by this arena
+     *
+     * @return bytes allocated and not yet freed
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Free every buffer of the arena; none of them may be used again
+     */
+    @Override
+    public void close() {
+        for (ByteBuffer buffer : buffers.keySet()) {
+            release(buffer);
+        }
+        buffers.clear();
+        closed = true;
+    }
+
+    /**
+     * Return a buffer's memory, to the system right away if the JVM allows it
+     */
+    private void release(ByteBuffer buffer) {
+        bytes -= buffer.capacity();
+        TOTAL_BYTES.addAndGet(-buffer.capacity());
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(buffer);
+                c.getClass().getMethod("clean").invoke(c);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the collector frees it once the buffer is unreachable
+        }
+    }
+}
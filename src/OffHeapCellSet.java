@@ -0,0 +1,260 @@
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * A {@link CellSet} whose table lives in native memory, so that it is neither limited by nor scanned with the heap
+ * <p>
+ * The same open addressing as CellSet, over slots spread across direct buffers of at most 2^24 keys each. The memory
+ * belongs to the set's own {@link OffHeapArena}: {@link #close()} frees all of it at once, after which the set must
+ * not be used. Copies are ordinary heap sets.
+ */
+public class OffHeapCellSet extends CellSet implements AutoCloseable {
+    private static final int MIN_CAPACITY = 16;
+    private static final int CHUNK_BITS = 24;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final long FREE = 0L; // as in CellSet
+
+    private final OffHeapArena arena = new OffHeapArena();
+    private final long seed = CellSet.nextSeed();
+    private ByteBuffer[] chunks;
+    private int mask;
+    private int shift;
+    private int size;
+    private boolean containsFree;
+
+    /**
+     * Create an empty set
+     */
+    public OffHeapCellSet() {
+        allocate(MIN_CAPACITY);
+    }
+
+    @Override
+    public boolean contains(long key) {
+        if (key == FREE) {
+            return containsFree;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = get(i);
+            if (k == key) return true;
+            if (k == FREE) return false;
+        }
+    }
+
+    @Override
+    public boolean add(long key) {
+        if (key == FREE) {
+            if (containsFree) return false;
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int i = slot(key);
+        for (long k = get(i); k != FREE; k = get(i)) {
+            if (k == key) return false;
+            i = (i + 1) & mask;
+        }
+        put(i, key);
+        if (++size > (mask + 1) >> 1) {
+            rehash((mask + 1) << 1);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(long key) {
+        if (key == FREE) {
+            if (!containsFree) return false;
+            containsFree = false;
+            size--;
+            return true;
+        }
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = get(i);
+            if (k == FREE) return false;
+            if (k == key) {
+                shiftKeys(i);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void addAll(long[] keys, int count) {
+        ensureCapacity(size + count);
+        for (int i = 0; i < count; i++) {
+            add(keys[i]);
+        }
+    }
+
+    @Override
+    public void ensureCapacity(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity >> 1 < expected) {
+            capacity <<= 1;
+        }
+        if (capacity > mask + 1) {
+            rehash(capacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all cells, freeing the table instead of zeroing it
+     */
+    @Override
+    public void clear() {
+        for (ByteBuffer chunk : chunks) {
+            arena.free(chunk);
+        }
+        allocate(MIN_CAPACITY);
+        containsFree = false;
+        size = 0;
+    }
+
+    @Override
+    public void forEach(LongConsumer action) {
+        if (containsFree) {
+            action.accept(FREE);
+        }
+        for (ByteBuffer chunk : chunks) {
+            for (int offset = 0; offset < chunk.capacity(); offset += 8) {
+                long k = chunk.getLong(offset);
+                if (k != FREE) {
+                    action.accept(k);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long[] toArray() {
+        long[] out = new long[size];
+        int[] n = { 0 };
+        forEach(k -> out[n[0]++] = k);
+        return out;
+    }
+
+    /**
+     * Make an independent copy of this set on the heap
+     *
+     * @return a copy of the set
+     */
+    @Override
+    public CellSet copy() {
+        CellSet copy = new CellSet(size);
+        forEach(copy::add);
+        return copy;
+    }
+
+    /**
+     * Getter for the memory taken by the table
+     *
+     * @return native bytes held by this set
+     */
+    public long getOffHeapBytes() {
+        return arena.getBytes();
+    }
+
+    /**
+     * Free the table at once; the set must not be used afterwards
+     */
+    @Override
+    public void close() {
+        arena.close();
+        chunks = new ByteBuffer[0];
+        size = 0;
+        containsFree = false;
+    }
+
+    /**
+     * Read a slot
+     */
+    private long get(int i) {
+        return chunks[i >>> CHUNK_BITS].getLong((i & CHUNK_MASK) << 3);
+    }
+
+    /**
+     * Write a slot
+     */
+    private void put(int i, long key) {
+        chunks[i >>> CHUNK_BITS].putLong((i & CHUNK_MASK) << 3, key);
+    }
+
+    /**
+     * Find the home slot of a key
+     */
+    private int slot(long key) {
+        return (int) (CellSet.mix(key ^ seed) >>> shift);
+    }
+
+    /**
+     * Close the gap left by a removed key so that later probes still find displaced keys (see CellSet.shiftKeys)
+     *
+     * @param gap index of the removed key
+     */
+    private void shiftKeys(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = get(i);
+            if (k == FREE) {
+                break;
+            }
+            int home = slot(k);
+            if (gap <= i ? (gap >= home || home > i) : (gap >= home && home > i)) {
+                put(gap, k);
+                gap = i;
+            }
+        }
+        put(gap, FREE);
+    }
+
+    /**
+     * Move every key into a table of a new size and free the old one
+     *
+     * @param capacity new table size, a power of two
+     */
+    private void rehash(int capacity) {
+        ByteBuffer[] old = chunks;
+        allocate(capacity);
+        for (ByteBuffer chunk : old) {
+            for (int offset = 0; offset < chunk.capacity(); offset += 8) {
+                long k = chunk.getLong(offset);
+                if (k != FREE) {
+                    int i = slot(k);
+                    while (get(i) != FREE) {
+                        i = (i + 1) & mask;
+                    }
+                    put(i, k);
+                }
+            }
+            arena.free(chunk);
+        }
+    }
+
+    /**
+     * Replace the table with an empty one
+     *
+     * @param capacity table size, a power of two
+     */
+    private void allocate(int capacity) {
+        int chunkSlots = Math.min(capacity, 1 << CHUNK_BITS);
+        chunks = new ByteBuffer[capacity / chunkSlots];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = arena.allocate(chunkSlots << 3);
+        }
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+}
@@ -0,0 +1,266 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * One generation of a set of live cells, computed in parallel over square spatial partitions
+ * <p>
+ * Every partition owns the cells inside its square and also receives a halo: the live cells of neighboring
+ * partitions that touch its border. With the halo, a partition can decide the next state of each of its own cells
+ * without reading anything another task writes, so the partitions run without locks and the outcome does not
+ * depend on scheduling.
+ */
+class PartitionedStep {
+    static final int PARTITION_BITS = 6;
+    private static final int PARTITION_MASK = (1 << PARTITION_BITS) - 1;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Partition[] partitions;
+    private final Rule rule;
+
+    /**
+     * Bucket live cells by partition, copying border cells into the halos of the neighboring partitions
+     *
+     * @param liveCells the current generation
+     * @param rule      the rule to step by
+     */
+    PartitionedStep(CellSet liveCells, Rule rule) {
+        this.rule = rule;
+        PartitionIndex byKey = new PartitionIndex();
+        liveCells.forEach(c -> {
+            long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+            long px = x >> PARTITION_BITS, py = y >> PARTITION_BITS;
+            byKey.get(px, py).cells.add(c);
+            // a cell on the border is a neighbor of cells in the adjacent partitions
+            int lx = (int) (x & PARTITION_MASK), ly = (int) (y & PARTITION_MASK);
+            int dxMin = lx == 0 ? -1 : 0, dxMax = lx == PARTITION_MASK ? 1 : 0;
+            int dyMin = ly == 0 ? -1 : 0, dyMax = ly == PARTITION_MASK ? 1 : 0;
+            for (int dx = dxMin; dx <= dxMax; dx++) {
+                for (int dy = dyMin; dy <= dyMax; dy++) {
+                    if (dx != 0 || dy != 0) {
+                        byKey.get(px + dx, py + dy).halo.add(c);
+                    }
+                }
+            }
+        });
+        partitions = byKey.toArray();
+        // fixed order so that merging is reproducible
+        Arrays.sort(partitions, (a, b) -> Long.compare(a.key, b.key));
+    }
+
+    /**
+     * Step every partition on a pool
+     *
+     * @param pool the pool to run on
+     * @return CPU time spent by the workers, in nanoseconds
+     */
+    long run(ForkJoinPool pool) {
+        int leafSize = Math.max(1, partitions.length / (pool.getParallelism() * 4));
+        return pool.invoke(new StepTask(0, partitions.length, leafSize));
+    }
+
+    /**
+     * Collect every partition's changes
+     *
+     * @param births receives the cells to be born
+     * @param deaths receives the cells to be killed
+     */
+    void merge(CellSet births, CellSet deaths) {
+        for (Partition p : partitions) {
+            for (int i = 0; i < p.births.size; i++) {
+                births.add(p.births.keys[i]);
+            }
+            for (int i = 0; i < p.deaths.size; i++) {
+                deaths.add(p.deaths.keys[i]);
+            }
+        }
+    }
+
+    /**
+     * CPU time of the calling thread
+     *
+     * @return CPU time in nanoseconds, or 0 if the JVM cannot measure it, so that differences of it come out 0
+     *         rather than wall time taken on different threads
+     */
+    static long threadCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Decide the next state of a partition's cells
+     *
+     * @param p         the partition
+     * @param neighbors scratch table owned by the calling task
+     */
+    private void step(Partition p, NeighborTable neighbors) {
+        long px = Coordinate.unpackX(p.key), py = Coordinate.unpackY(p.key);
+        neighbors.reset((p.cells.size + p.halo.size) * 4);
+        // same encoding as Board.evolve(): the neighborhood mask of each cell, restricted to this partition
+        for (int i = 0; i < p.cells.size; i++) {
+            scatter(p.cells.keys[i], px, py, neighbors);
+        }
+        for (int i = 0; i < p.halo.size; i++) {
+            scatter(p.halo.keys[i], px, py, neighbors);
+        }
+        for (int slot = 0; slot < neighbors.capacity(); slot++) {
+            int mask = neighbors.valueAt(slot);
+            if (mask != 0) {
+                boolean alive = (mask & Board.SELF) != 0;
+                if (rule.next(mask) != alive) {
+                    (alive ? p.deaths : p.births).add(neighbors.keyAt(slot));
+                }
+            }
+        }
+    }
+
+    /**
+     * Set a live cell's bit in the neighborhood masks of those cells around it that lie inside a partition
+     */
+    private static void scatter(long c, long px, long py, NeighborTable neighbors) {
+        long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+        for (int i = -1; i <= 1; i++) {
+            if ((x + i) >> PARTITION_BITS != px) continue;
+            for (int j = -1; j <= 1; j++) {
+                if ((y + j) >> PARTITION_BITS == py) {
+                    neighbors.add(Coordinate.pack(x + i, y + j), 1 << Rule.bit(-i, -j));
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps a range of partitions, splitting it in half until it is small enough
+     */
+    private class StepTask extends RecursiveTask<Long> {
+        private final int from, to, leafSize;
+
+        StepTask(int from, int to, int leafSize) {
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= leafSize) {
+                long cpuStart = threadCpuTime();
+                NeighborTable neighbors = new NeighborTable();
+                for (int i = from; i < to; i++) {
+                    step(partitions[i], neighbors);
+                }
+                return threadCpuTime() - cpuStart;
+            }
+            int mid = (from + to) >>> 1;
+            StepTask left = new StepTask(from, mid, leafSize);
+            left.fork();
+            long right = new StepTask(mid, to, leafSize).compute();
+            return right + left.join();
+        }
+    }
+
+    /**
+     * A square of the plane: its own live cells, the halo, and the computed changes
+     */
+    private static class Partition {
+        final long key;
+        final LongList cells = new LongList(), halo = new LongList(), births = new LongList(), deaths = new LongList();
+
+        Partition(long key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The partitions found so far, by packed partition coordinates
+     * <p>
+     * Open addressing with linear probing like {@link NeighborTable}, from keys to positions in a list of partitions,
+     * so bucketing a cell neither boxes its key nor allocates an entry.
+     */
+    private static class PartitionIndex {
+        private static final int MIN_CAPACITY = 16;
+
+        private final long seed = CellSet.nextSeed(); // see CellSet.seed
+        private long[] keys;
+        private int[] positions; // position in partitions plus 1, or 0 for an empty slot
+        private int mask;
+        private int shift;
+        private Partition[] partitions = new Partition[MIN_CAPACITY];
+        private int size;
+
+        PartitionIndex() {
+            allocate(MIN_CAPACITY);
+        }
+
+        /**
+         * Find or create a partition
+         */
+        Partition get(long px, long py) {
+            long key = Coordinate.pack(px, py);
+            int i = (int) (CellSet.mix(key ^ seed) >>> shift);
+            while (positions[i] != 0) {
+                if (keys[i] == key) {
+                    return partitions[positions[i] - 1];
+                }
+                i = (i + 1) & mask;
+            }
+            Partition p = new Partition(key);
+            if (size == partitions.length) {
+                partitions = Arrays.copyOf(partitions, size * 2);
+            }
+            partitions[size++] = p;
+            keys[i] = key;
+            positions[i] = size;
+            if (size > (mask + 1) >> 1) {
+                rehash((mask + 1) << 1);
+            }
+            return p;
+        }
+
+        /**
+         * Every partition, in the order they were created
+         */
+        Partition[] toArray() {
+            return Arrays.copyOf(partitions, size);
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldPositions = positions;
+            allocate(capacity);
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldPositions[j] != 0) {
+                    int i = (int) (CellSet.mix(oldKeys[j] ^ seed) >>> shift);
+                    while (positions[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    positions[i] = oldPositions[j];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            positions = new int[capacity];
+            mask = capacity - 1;
+            shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        }
+    }
+
+    /**
+     * A growable array of packed keys
+     */
+    private static class LongList {
+        long[] keys = new long[16];
+        int size;
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+}
@@ -0,0 +1,689 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read and write patterns in the RLE and Macrocell (.mc) formats used by Golly and the LifeWiki
+ * <p>
+ * Files are parsed straight from a byte buffer, so a pattern never sits in memory as text, and cells reach the engine
+ * in batches through {@link LifeEngine#addCells(long[], int)}. Both formats count rows downwards; row r is placed at
+ * y = -r, so patterns come out the right way up on the board.
+ */
+public class PatternIO {
+    private static final int BATCH_SIZE = 1 << 16; // cells handed to the engine at a time
+    private static final int RLE_LINE_LENGTH = 70;
+
+    /**
+     * Load a pattern file into an engine, detecting the format from its contents
+     * <p>
+     * A rule given in the file is set on the engine; a checkpoint (see {@link Checkpoint}) also restores the
+     * generation count.
+     *
+     * @param file   an RLE, Macrocell or checkpoint file
+     * @param engine the engine that receives the live cells
+     * @return number of cells loaded
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static long read(File file, LifeEngine engine) throws IOException {
+        if (Checkpoint.isCheckpoint(file)) {
+            return Checkpoint.read(file, engine);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            Input input = new Input(in);
+            return input.peek() == '[' ? readMacrocell(input, engine) : readRle(input, engine);
+        }
+    }
+
+    /**
+     * Load an RLE pattern into an engine
+     *
+     * @param in     the RLE text
+     * @param engine the engine that receives the live cells
+     * @return number of cells loaded
+     * @throws IOException if the stream cannot be read or is malformed
+     */
+    public static long readRle(InputStream in, LifeEngine engine) throws IOException {
+        return readRle(new Input(in), engine);
+    }
+
+    /**
+     * Load a Macrocell pattern into an engine
+     *
+     * @param in     the Macrocell text
+     * @param engine the engine that receives the live cells
+     * @return number of cells loaded
+     * @throws IOException if the stream cannot be read or is malformed
+     */
+    public static long readMacrocell(InputStream in, LifeEngine engine) throws IOException {
+        return readMacrocell(new Input(in), engine);
+    }
+
+    /**
+     * Save the state of an engine, as a checkpoint if the file name ends in .jgol and as a pattern otherwise
+     *
+     * @param file   the file to write; see {@link #write(File, CellSet, Rule)} for pattern formats
+     * @param engine the engine to save
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(File file, LifeEngine engine) throws IOException {
+        if (file.getName().toLowerCase().endsWith(".jgol")) {
+            Checkpoint.write(file, engine.getLiveCells(), engine.getGenCount(), engine.getRule());
+        } else {
+            write(file, engine.getLiveCells(), engine.getRule());
+        }
+    }
+
+    /**
+     * Save cells to a file, as Macrocell if the name ends in .mc and as RLE otherwise
+     *
+     * @param file  the file to write
+     * @param cells the live cells
+     * @param rule  the rule to record
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, CellSet cells, Rule rule) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII), 1 << 16)) {
+            if (file.getName().toLowerCase().endsWith(".mc")) {
+                writeMacrocell(cells, rule, out);
+            } else {
+                writeRle(cells, rule, out);
+            }
+        }
+    }
+
+    /**
+     * Write cells as RLE, recording the position of the top-left corner in a #CXRLE line
+     *
+     * @param cells the live cells
+     * @param rule  the rule to record in the header
+     * @param out   where to write the text
+     * @throws IOException if writing fails
+     */
+    public static void writeRle(CellSet cells, Rule rule, Writer out) throws IOException {
+        // sort into reading order: rows from the top, then left to right
+        long[] order = cells.toArray();
+        long minX = Long.MAX_VALUE, maxX = Long.MIN_VALUE;
+        for (int i = 0; i < order.length; i++) {
+            long x = Coordinate.unpackX(order[i]), y = Coordinate.unpackY(order[i]);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            order[i] = readingOrder(x, y);
+        }
+        Arrays.sort(order);
+        if (order.length == 0) {
+            out.write("x = 0, y = 0, rule = " + rule + "\n!\n");
+            return;
+        }
+        long top = rowOf(order[0]), bottom = rowOf(order[order.length - 1]);
+        out.write("#CXRLE Pos=" + minX + "," + top + "\n");
+        out.write("x = " + (maxX - minX + 1) + ", y = " + (bottom - top + 1) + ", rule = " + rule + "\n");
+
+        RleWriter rle = new RleWriter(out);
+        long row = top, col = 0; // position of the next cell to be written
+        long runStart = 0, runLength = 0; // pending run of live cells
+        for (long key : order) {
+            long r = rowOf(key), x = columnOf(key) - minX;
+            if (runLength > 0 && (r != row || x != runStart + runLength)) {
+                rle.run(runLength, 'o');
+                col = runStart + runLength;
+                runLength = 0;
+            }
+            if (r != row) {
+                rle.run(r - row, '$');
+                row = r;
+                col = 0;
+            }
+            if (runLength == 0) {
+                rle.run(x - col, 'b');
+                runStart = x;
+            }
+            runLength++;
+        }
+        rle.run(runLength, 'o');
+        rle.end();
+    }
+
+    /**
+     * Write cells as a Macrocell quadtree, with identical subtrees written once
+     * <p>
+     * The root is centred on the origin, as Golly places it when loading.
+     *
+     * @param cells the live cells
+     * @param rule  the rule to record in a #R line
+     * @param out   where to write the text
+     * @throws IOException if writing fails
+     */
+    public static void writeMacrocell(CellSet cells, Rule rule, Writer out) throws IOException {
+        out.write("[M2] (JGoL)\n#R " + rule + "\n");
+        int[] nextId = { 1 };
+
+        // level 3: 8x8 leaves, found by sorting the cells by block; positions count rows downwards
+        long[] order = cells.toArray();
+        for (int i = 0; i < order.length; i++) {
+            long x = Coordinate.unpackX(order[i]), row = -Coordinate.unpackY(order[i]);
+            order[i] = (row >> 3) << 35 | ((x >> 3) & 0x1FFFFFFFL) << 6 | (row & 7) << 3 | (x & 7);
+        }
+        Arrays.sort(order);
+        HashMap<Long, Integer> leaves = new HashMap<>();
+        Level level = new Level();
+        for (int i = 0; i < order.length; ) {
+            long block = order[i] >> 6;
+            long bits = 0;
+            for (; i < order.length && order[i] >> 6 == block; i++) {
+                bits |= 1L << (order[i] & 63);
+            }
+            Integer id = leaves.get(bits);
+            if (id == null) {
+                id = nextId[0]++;
+                leaves.put(bits, id);
+                writeLeaf(bits, out);
+            }
+            level.add((int) ((block << 35) >> 35), (int) (block >> 29), id);
+        }
+
+        // merge four nodes into their parent until everything fits around the origin
+        int depth = 3;
+        while (!level.nearOrigin()) {
+            HashMap<Long, int[]> parents = new HashMap<>();
+            for (int i = 0; i < level.size; i++) {
+                int x = level.xs[i], y = level.ys[i];
+                int[] children = parents.computeIfAbsent(Coordinate.pack(x >> 1, y >> 1), k -> new int[4]);
+                children[(y & 1) << 1 | (x & 1)] = level.ids[i];
+            }
+            depth++;
+            HashMap<Quad, Integer> canonical = new HashMap<>();
+            Level next = new Level();
+            for (Map.Entry<Long, int[]> entry : parents.entrySet()) {
+                int id = writeNode(depth, entry.getValue(), canonical, nextId, out);
+                next.add((int) Coordinate.unpackX(entry.getKey()), (int) Coordinate.unpackY(entry.getKey()), id);
+            }
+            level = next;
+        }
+        // the root's quadrants are the nodes at (-1, -1), (0, -1), (-1, 0) and (0, 0)
+        int[] root = new int[4];
+        for (int i = 0; i < level.size; i++) {
+            root[(level.ys[i] + 1) << 1 | (level.xs[i] + 1)] = level.ids[i];
+        }
+        writeNode(depth + 1, root, new HashMap<>(), nextId, out);
+    }
+
+    /**
+     * Parse RLE, from optional comment lines and the header line through to the terminating '!'
+     */
+    private static long readRle(Input in, LifeEngine engine) throws IOException {
+        long originX = 0, originRow = 0;
+        // comments and header
+        while (true) {
+            int c = in.peek();
+            if (c == -1) {
+                return 0;
+            } else if (c == '#') {
+                String line = in.readLine();
+                String[] words = line.trim().split("\\s+");
+                try {
+                    if (words[0].equals("#CXRLE")) {
+                        for (String w : words) {
+                            if (w.startsWith("Pos=")) {
+                                String[] pos = w.substring(4).split(",");
+                                originX = Long.parseLong(pos[0]);
+                                originRow = Long.parseLong(pos[1]);
+                            }
+                        }
+                    } else if ((words[0].equals("#P") || words[0].equals("#R")) && words.length >= 3) {
+                        originX = Long.parseLong(words[1]);
+                        originRow = Long.parseLong(words[2]);
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Bad position in \"" + line + "\"", e);
+                }
+            } else if (c == 'x') {
+                // the size is not needed to place the cells, but the rule is
+                String header = in.readLine();
+                int rule = header.indexOf("rule");
+                if (rule >= 0) {
+                    setRule(engine, header.substring(header.indexOf('=', rule) + 1));
+                }
+                break;
+            } else if (Character.isWhitespace(c)) {
+                in.read();
+            } else {
+                break; // no header, the pattern starts right away
+            }
+        }
+
+        // pattern body: runs of <count><tag>, where tag is b (dead), o (alive), $ (end of row) or ! (end of pattern)
+        Batch batch = new Batch(engine);
+        long row = 0, col = 0, count = 0;
+        for (int c = in.read(); c != -1 && c != '!'; c = in.read()) {
+            if (c >= '0' && c <= '9') {
+                count = count * 10 + (c - '0');
+                if (count > Integer.MAX_VALUE) {
+                    throw new IOException("Run length too long at row " + row);
+                }
+                continue;
+            }
+            long n = count == 0 ? 1 : count;
+            count = 0;
+            if (c == 'b' || c == '.') {
+                col += n;
+            } else if (c == 'o' || (c >= 'A' && c <= 'X')) {
+                for (long i = 0; i < n; i++) {
+                    batch.add(originX + col++, -(originRow + row));
+                }
+            } else if (c == '$') {
+                row += n;
+                col = 0;
+            } else if (!Character.isWhitespace(c)) {
+                throw new IOException("Unexpected '" + (char) c + "' at row " + row);
+            }
+        }
+        return batch.finish();
+    }
+
+    /**
+     * Parse Macrocell: a header, comments, then one node per line numbered from 1, children before parents
+     * <p>
+     * Leaves are 8x8 blocks given as rows of '.' and '*' ended by '$'; other nodes are "level nw ne sw se", with 0 for an
+     * empty child. The last node is the root.
+     */
+    private static long readMacrocell(Input in, LifeEngine engine) throws IOException {
+        String header = in.readLine();
+        if (!header.startsWith("[M2]")) {
+            throw new IOException("Not a Macrocell file");
+        }
+        // node 0 is the empty node; levels[i] == 3 marks a leaf whose cells are in leafBits[i]
+        int[] levels = new int[1024];
+        int[] children = new int[4 * 1024];
+        long[] leafBits = new long[1024];
+        int count = 1;
+        for (int c = in.peek(); c != -1; c = in.peek()) {
+            if (c == '#' || c == '\n' || c == '\r') {
+                String line = in.readLine();
+                if (line.startsWith("#R")) {
+                    setRule(engine, line.substring(2));
+                }
+                continue;
+            }
+            if (count == levels.length) {
+                levels = Arrays.copyOf(levels, count * 2);
+                children = Arrays.copyOf(children, count * 8);
+                leafBits = Arrays.copyOf(leafBits, count * 2);
+            }
+            if (c == '.' || c == '*' || c == '$') {
+                long bits = 0;
+                int r = 0, x = 0;
+                for (c = in.read(); c != -1 && c != '\n'; c = in.read()) {
+                    if (c == '*' && r < 8 && x < 8) {
+                        bits |= 1L << (r << 3 | x);
+                    }
+                    if (c == '$') {
+                        r++;
+                        x = 0;
+                    } else if (c == '.' || c == '*') {
+                        x++;
+                    } else if (c != '\r') {
+                        throw new IOException("Unexpected '" + (char) c + "' in leaf node " + count);
+                    }
+                }
+                levels[count] = 3;
+                leafBits[count] = bits;
+            } else {
+                int level = (int) in.readNumber();
+                if (level <= 3 || level > 63) {
+                    throw new IOException("Unsupported level " + level + " in node " + count
+                            + "; only two-state patterns with 8x8 leaves can be read");
+                }
+                levels[count] = level;
+                for (int q = 0; q < 4; q++) {
+                    long child = in.readNumber();
+                    if (child >= count || (child != 0 && levels[(int) child] != level - 1)) {
+                        throw new IOException("Bad child " + child + " in node " + count);
+                    }
+                    children[4 * count + q] = (int) child;
+                }
+                in.readLine();
+            }
+            count++;
+        }
+        Batch batch = new Batch(engine);
+        int root = count - 1;
+        if (root > 0) {
+            long half = 1L << (levels[root] - 1);
+            emit(root, -half, -half, levels, children, leafBits, batch);
+        }
+        return batch.finish();
+    }
+
+    /**
+     * Set the rule named in a pattern file on an engine
+     *
+     * @param engine the engine being loaded
+     * @param text   the rule, possibly followed by a Golly grid suffix such as ":T100,100", which is ignored
+     * @throws IOException if the rule is not supported
+     */
+    private static void setRule(LifeEngine engine, String text) throws IOException {
+        int suffix = text.indexOf(':');
+        try {
+            engine.setRule(Rule.parse(suffix >= 0 ? text.substring(0, suffix) : text));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send the live cells of a Macrocell node to the engine
+     *
+     * @param node     index of the node
+     * @param left     x-coordinate of the node's left column
+     * @param top      row of the node's top row, counting downwards
+     * @param levels   level of every node
+     * @param children four children per node
+     * @param leafBits cells of every leaf, bit 8 r + x for row r and column x
+     * @param batch    where to send the cells
+     */
+    private static void emit(int node, long left, long top, int[] levels, int[] children, long[] leafBits, Batch batch)
+            throws IOException {
+        if (node == 0) {
+            return;
+        }
+        if (levels[node] == 3) {
+            for (long bits = leafBits[node]; bits != 0; bits &= bits - 1) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                batch.add(left + (bit & 7), -(top + (bit >>> 3)));
+            }
+            return;
+        }
+        long half = 1L << (levels[node] - 1);
+        emit(children[4 * node], left, top, levels, children, leafBits, batch);
+        emit(children[4 * node + 1], left + half, top, levels, children, leafBits, batch);
+        emit(children[4 * node + 2], left, top + half, levels, children, leafBits, batch);
+        emit(children[4 * node + 3], left + half, top + half, levels, children, leafBits, batch);
+    }
+
+    /**
+     * Write an 8x8 leaf, leaving out trailing dead cells and empty rows at the bottom
+     *
+     * @param bits cells of the leaf, bit 8 r + x for row r and column x
+     * @param out  where to write the text
+     */
+    private static void writeLeaf(long bits, Writer out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int r = 0; r < 8 && bits >>> (r << 3) != 0; r++) {
+            int row = (int) (bits >>> (r << 3)) & 0xFF;
+            for (int x = 0; row >>> x != 0; x++) {
+                line.append((row >>> x & 1) != 0 ? '*' : '.');
+            }
+            line.append('$');
+        }
+        out.write(line.append('\n').toString());
+    }
+
+    /**
+     * Write an interior node unless an identical one has been written already
+     *
+     * @param level     level of the node
+     * @param quads     ids of the nw, ne, sw and se children, 0 for empty
+     * @param canonical nodes of this level written so far
+     * @param nextId    holds the id for the next new node
+     * @param out       where to write the text
+     * @return id of the node
+     */
+    private static int writeNode(int level, int[] quads, HashMap<Quad, Integer> canonical, int[] nextId, Writer out)
+            throws IOException {
+        Quad quad = new Quad(quads);
+        Integer id = canonical.get(quad);
+        if (id == null) {
+            id = nextId[0]++;
+            canonical.put(quad, id);
+            out.write(level + " " + quads[0] + " " + quads[1] + " " + quads[2] + " " + quads[3] + "\n");
+        }
+        return id;
+    }
+
+    /**
+     * Sort key putting cells in reading order: top row first, then left to right
+     */
+    private static long readingOrder(long x, long y) {
+        // ~y puts higher rows first without overflowing; flipping the sign bit of x sorts it as unsigned
+        return (long) ~(int) y << 32 | ((int) x ^ 0x80000000L) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Row, counting downwards, of a key made by {@link #readingOrder(long, long)}
+     */
+    private static long rowOf(long key) {
+        return -(long) ~(int) (key >> 32);
+    }
+
+    /**
+     * Column of a key made by {@link #readingOrder(long, long)}
+     */
+    private static long columnOf(long key) {
+        return (int) (key ^ 0x80000000L);
+    }
+
+    /**
+     * Cells waiting to be handed to an engine
+     */
+    private static class Batch {
+        private final LifeEngine engine;
+        private final long[] keys = new long[BATCH_SIZE];
+        private int size = 0;
+        private long total = 0;
+
+        Batch(LifeEngine engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Queue a live cell
+         *
+         * @param x x-coordinate of the cell
+         * @param y y-coordinate of the cell
+         * @throws IOException if the cell lies outside the range of packed coordinates
+         */
+        void add(long x, long y) throws IOException {
+            if (x != (int) x || y != (int) y) {
+                throw new IOException("Cell (" + x + ", " + y + ") is out of range");
+            }
+            keys[size++] = Coordinate.pack(x, y);
+            if (size == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Hand over the remaining cells
+         *
+         * @return number of cells added in total
+         */
+        long finish() {
+            flush();
+            return total;
+        }
+
+        private void flush() {
+            engine.addCells(keys, size);
+            total += size;
+            size = 0;
+        }
+    }
+
+    /**
+     * Run-length encoder for RLE bodies, wrapping lines at {@value #RLE_LINE_LENGTH} characters
+     */
+    private static class RleWriter {
+        private final Writer out;
+        private int lineLength = 0;
+
+        RleWriter(Writer out) {
+            this.out = out;
+        }
+
+        /**
+         * Write a run
+         *
+         * @param length number of repetitions; nothing is written for 0
+         * @param tag    'b', 'o' or '$'
+         */
+        void run(long length, char tag) throws IOException {
+            if (length <= 0) {
+                return;
+            }
+            String item = length == 1 ? String.valueOf(tag) : length + String.valueOf(tag);
+            if (lineLength + item.length() > RLE_LINE_LENGTH) {
+                out.write('\n');
+                lineLength = 0;
+            }
+            out.write(item);
+            lineLength += item.length();
+        }
+
+        /**
+         * Terminate the pattern
+         */
+        void end() throws IOException {
+            out.write("!\n");
+        }
+    }
+
+    /**
+     * Nodes of one quadtree level, by position in units of the node size
+     */
+    private static class Level {
+        int[] xs = new int[16], ys = new int[16], ids = new int[16];
+        int size = 0;
+
+        void add(int x, int y, int id) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            ids[size++] = id;
+        }
+
+        /**
+         * Check whether every node is one of the four around the origin
+         */
+        boolean nearOrigin() {
+            for (int i = 0; i < size; i++) {
+                if (xs[i] < -1 || xs[i] > 0 || ys[i] < -1 || ys[i] > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The children of an interior node, as a map key
+     */
+    private static class Quad {
+        private final int nw, ne, sw, se;
+
+        Quad(int[] quads) {
+            nw = quads[0];
+            ne = quads[1];
+            sw = quads[2];
+            se = quads[3];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Quad)) return false;
+            Quad q = (Quad) o;
+            return nw == q.nw && ne == q.ne && sw == q.sw && se == q.se;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((nw * 31 + ne) * 31 + sw) * 31 + se;
+        }
+    }
+
+    /**
+     * Buffered byte input with one character of lookahead
+     */
+    private static class Input {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position = 0, limit = 0;
+
+        Input(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Look at the next character without consuming it
+         *
+         * @return the character, or -1 at the end of the input
+         */
+        int peek() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position] & 0xFF;
+        }
+
+        /**
+         * Consume the next character
+         *
+         * @return the character, or -1 at the end of the input
+         */
+        int read() throws IOException {
+            int c = peek();
+            if (c != -1) {
+                position++;
+            }
+            return c;
+        }
+
+        /**
+         * Consume the rest of the current line
+         *
+         * @return the line without its terminator
+         */
+        String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int c = read(); c != -1 && c != '\n'; c = read()) {
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        /**
+         * Consume a non-negative decimal number and the spaces before it
+         *
+         * @return the number
+         * @throws IOException if there is no number
+         */
+        long readNumber() throws IOException {
+            while (peek() == ' ' || peek() == '\t') {
+                read();
+            }
+            if (peek() < '0' || peek() > '9') {
+                throw new IOException("Expected a number");
+            }
+            long n = 0;
+            while (peek() >= '0' && peek() <= '9') {
+                n = n * 10 + (read() - '0');
+                if (n > Integer.MAX_VALUE) {
+                    throw new IOException("Number too large");
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Life-like rule, compiled into a table from 3x3 neighborhoods to next states
+ * <p>
+ * A neighborhood is a 9-bit mask with bit {@code (dy + 1) * 3 + (dx + 1)} set if the cell at offset (dx, dy) is alive,
+ * y increasing to the north; bit 4 is the cell itself. Rules are written in B/S notation, optionally with Hensel's
+ * isotropic non-totalistic letters after a count (B2-a/S12 is born on two neighbors unless they are adjacent), or in
+ * the older survival/birth form (23/3).
+ * <p>
+ * Rules where a dead cell with no live neighbors is born (B0) are rejected: the engines only look at cells near live
+ * ones.
+ */
+public final class Rule {
+    private static final Pattern B_S = Pattern.compile("b([0-8cekainyqjrtwz-]*)/?s([0-8cekainyqjrtwz-]*)");
+    private static final Pattern S_B = Pattern.compile("s([0-8cekainyqjrtwz-]*)/?b([0-8cekainyqjrtwz-]*)");
+    private static final Pattern LEGACY = Pattern.compile("([0-8]*)/([0-8]*)");
+
+    // Hensel's letters for each neighbor count, in the standard order
+    private static final String[] LETTERS = {
+            "", "ce", "cekain", "cekainyqjr", "cekainyqjrtwz", "cekainyqjr", "cekain", "ce", "" };
+    // one neighborhood per letter for counts 0 to 4, as ring bits N, NE, E, SE, S, SW, W, NW from bit 0;
+    // counts 5 to 8 are the complements of counts 3 to 0
+    private static final int[][] SHAPES = {
+            { 0x00 },
+            { 0x02, 0x01 },
+            { 0x0a, 0x05, 0x09, 0x03, 0x11, 0x22 },
+            { 0x2a, 0x15, 0x25, 0x07, 0x83, 0x0b, 0x29, 0x23, 0x43, 0x13 },
+            { 0xaa, 0x55, 0x4b, 0x0f, 0x1b, 0x8b, 0x2b, 0x27, 0x53, 0x17, 0x93, 0x63, 0x33 } };
+    // mask bit of each ring position
+    private static final int[] RING_BITS = { 7, 8, 5, 2, 1, 0, 3, 6 };
+    private static final int SELF = 1 << 4;
+
+    public static final Rule CONWAY = parse("B3/S23");
+
+    private final boolean[] table; // next state by neighborhood mask
+    private final String name;
+    private final int birthCounts, survivalCounts; // bit n set if every neighborhood with n live neighbors is included
+    private final boolean totalistic;
+
+    /**
+     * Create a rule from its table
+     *
+     * @param table next state by neighborhood mask, 512 entries
+     * @param name  canonical rule string
+     */
+    private Rule(boolean[] table, String name) {
+        this.table = table;
+        this.name = name;
+        int births = 0, survivals = 0;
+        boolean uniform = true;
+        for (int count = 0; count <= 8; count++) {
+            boolean born = false, survives = false, bornAll = true, survivesAll = true;
+            for (int mask = 0; mask < 512; mask++) {
+                if ((mask & SELF) == 0 && Integer.bitCount(mask) == count) {
+                    born |= table[mask];
+                    bornAll &= table[mask];
+                    survives |= table[mask | SELF];
+                    survivesAll &= table[mask | SELF];
+                }
+            }
+            uniform &= born == bornAll && survives == survivesAll;
+            births |= bornAll ? 1 << count : 0;
+            survivals |= survivesAll ? 1 << count : 0;
+        }
+        birthCounts = births;
+        survivalCounts = survivals;
+        totalistic = uniform;
+    }
+
+    /**
+     * Parse a rule string
+     *
+     * @param text the rule, for example B3/S23, B36/S23, B2-a/S12 or 23/3
+     * @return the compiled rule
+     * @throws IllegalArgumentException if the rule is malformed or has B0
+     */
+    public static Rule parse(String text) {
+        String s = text.trim().toLowerCase().replace(" ", "");
+        String birth, survival;
+        Matcher m;
+        if ((m = B_S.matcher(s)).matches()) {
+            birth = m.group(1);
+            survival = m.group(2);
+        } else if ((m = S_B.matcher(s)).matches()) {
+            survival = m.group(1);
+            birth = m.group(2);
+        } else if ((m = LEGACY.matcher(s)).matches()) {
+            survival = m.group(1);
+            birth = m.group(2);
+        } else {
+            throw new IllegalArgumentException("Cannot read rule \"" + text + "\"; expected something like B3/S23");
+        }
+        boolean[][] births = parseCounts(birth, text), survivals = parseCounts(survival, text);
+        if (births[0][0]) {
+            throw new IllegalArgumentException("Rules with B0 are not supported");
+        }
+
+        boolean[] table = new boolean[512];
+        for (int count = 0; count <= 8; count++) {
+            for (int letter = 0; letter < births[count].length; letter++) {
+                for (int mask : neighborhoods(count, letter)) {
+                    table[mask] = births[count][letter];
+                    table[mask | SELF] = survivals[count][letter];
+                }
+            }
+        }
+        return new Rule(table, "B" + format(births) + "/S" + format(survivals));
+    }
+
+    /**
+     * Next state of a cell
+     *
+     * @param mask the cell's neighborhood, including the cell itself as bit 4
+     * @return true if the cell is alive in the next generation
+     */
+    public boolean next(int mask) {
+        return table[mask];
+    }
+
+    /**
+     * Check whether the next state depends only on the number of live neighbors
+     *
+     * @return true for rules without Hensel letters (or whose letters add up to whole counts)
+     */
+    public boolean isTotalistic() {
+        return totalistic;
+    }
+
+    /**
+     * Neighbor counts on which a dead cell is born, for totalistic rules
+     *
+     * @return bit n set if a dead cell with n live neighbors is born
+     */
+    public int getBirthCounts() {
+        return birthCounts;
+    }
+
+    /**
+     * Neighbor counts on which a live cell survives, for totalistic rules
+     *
+     * @return bit n set if a live cell with n live neighbors survives
+     */
+    public int getSurvivalCounts() {
+        return survivalCounts;
+    }
+
+    /**
+     * The rule in canonical B/S notation
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Rule && Arrays.equals(table, ((Rule) o).table);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(table);
+    }
+
+    /**
+     * Bit of a neighbor in a neighborhood mask
+     *
+     * @param dx x-offset from the cell, -1 to 1
+     * @param dy y-offset from the cell, -1 to 1
+     * @return the bit index
+     */
+    static int bit(int dx, int dy) {
+        return (dy + 1) * 3 + (dx + 1);
+    }
+
+    /**
+     * Parse the counts of one half of a rule, such as "2-a3" or "1e2ck"
+     *
+     * @param spec the digits and letters
+     * @param text the whole rule, for error messages
+     * @return for every count, whether each of its letters is included
+     */
+    private static boolean[][] parseCounts(String spec, String text) {
+        boolean[][] included = new boolean[9][];
+        for (int count = 0; count <= 8; count++) {
+            included[count] = new boolean[Math.max(1, LETTERS[count].length())];
+        }
+        int i = 0;
+        while (i < spec.length()) {
+            char c = spec.charAt(i++);
+            if (c < '0' || c > '8') {
+                throw new IllegalArgumentException("Unexpected '" + c + "' in rule \"" + text + "\"");
+            }
+            int count = c - '0';
+            boolean negate = i < spec.length() && spec.charAt(i) == '-';
+            if (negate) {
+                i++;
+            }
+            int start = i;
+            while (i < spec.length() && Character.isLetter(spec.charAt(i))) {
+                i++;
+            }
+            String letters = spec.substring(start, i);
+            if (letters.isEmpty() && negate) {
+                throw new IllegalArgumentException("Missing letters after " + count + "- in rule \"" + text + "\"");
+            }
+            Arrays.fill(included[count], letters.isEmpty() || negate);
+            for (char letter : letters.toCharArray()) {
+                int index = LETTERS[count].indexOf(letter);
+                if (index < 0) {
+                    throw new IllegalArgumentException("No neighborhood " + count + letter + " in rule \"" + text + "\"");
+                }
+                included[count][index] = !negate;
+            }
+        }
+        return included;
+    }
+
+    /**
+     * Write one half of a rule, using whichever of the included or excluded letters is shorter
+     */
+    private static String format(boolean[][] included) {
+        StringBuilder out = new StringBuilder();
+        for (int count = 0; count <= 8; count++) {
+            StringBuilder present = new StringBuilder(), absent = new StringBuilder();
+            for (int letter = 0; letter < LETTERS[count].length(); letter++) {
+                (included[count][letter] ? present : absent).append(LETTERS[count].charAt(letter));
+            }
+            if (LETTERS[count].isEmpty() ? included[count][0] : present.length() > 0) {
+                out.append(count);
+                if (absent.length() > 0) {
+                    out.append(present.length() <= absent.length() ? present : "-" + absent);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Every neighborhood mask, without the cell itself, belonging to one letter of a count
+     *
+     * @param count  number of live neighbors
+     * @param letter index of the letter in {@link #LETTERS}
+     * @return the masks: all rotations and reflections of the letter's shape
+     */
+    private static int[] neighborhoods(int count, int letter) {
+        int ring = count <= 4 ? SHAPES[count][letter] : ~SHAPES[8 - count][letter] & 0xFF;
+        int[] masks = new int[8];
+        int n = 0;
+        for (int reflect = 0; reflect < 2; reflect++) {
+            for (int rotate = 0; rotate < 8; rotate += 2) {
+                int mask = 0;
+                for (int p = 0; p < 8; p++) {
+                    if ((ring >> p & 1) != 0) {
+                        // rotating by 90 degrees moves two steps around the ring; reflecting swaps east and west
+                        int q = reflect == 0 ? p : (8 - p) & 7;
+                        mask |= 1 << RING_BITS[(q + rotate) & 7];
+                    }
+                }
+                masks[n++] = mask;
+            }
+        }
+        return masks;
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One end of a connection between the coordinator of a {@link DistributedBoard} and a {@link ShardWorker}, or
+ * between two neighboring workers
+ * <p>
+ * Every message is framed as:
+ * <pre>
+ * length     int, bytes that follow
+ * type       byte, one of the constants below
+ * header     int count, then that many longs
+ * text       int length, then that many bytes of UTF-8
+ * blockCount long, then the cells as encoded by {@link CellCodec}
+ * </pre>
+ * The channel is blocking: each side of a link knows whose turn it is to send.
+ */
+final class ShardLink implements AutoCloseable {
+    static final byte HELLO = 1; // coordinator to worker: index, count, lo, hi; text: right neighbor's host:port
+    static final byte PEER = 2; // worker to its right neighbor, opening their link
+    static final byte READY = 3; // worker to coordinator, once its links are up
+    static final byte RULE = 4; // coordinator to worker; text: the rule
+    static final byte EDIT = 5; // coordinator to worker; cells: cells whose state flips
+    static final byte CLEAR = 6; // coordinator to worker
+    static final byte RANGE = 7; // coordinator to worker: new lo, hi; cells: cells moving into the new range
+    static final byte STEP = 8; // coordinator to worker
+    static final byte HALO = 9; // worker to neighbor; cells: its live cells on the shared border
+    static final byte DONE = 10; // worker to coordinator: population, CPU nanoseconds; cells: the step's changes
+
+    private final SocketChannel channel;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+    /**
+     * Wrap a connected channel
+     *
+     * @param channel the channel, switched to blocking mode
+     * @throws IOException if the channel cannot be configured
+     */
+    ShardLink(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(true);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // messages are small and answered at once
+    }
+
+    /**
+     * Connect to a listening worker
+     *
+     * @param address the worker's address
+     * @return the link
+     * @throws IOException if the connection fails
+     */
+    static ShardLink connect(InetSocketAddress address) throws IOException {
+        return new ShardLink(SocketChannel.open(address));
+    }
+
+    /**
+     * Send a message without cells
+     */
+    void send(byte type, long... header) throws IOException {
+        send(type, header, "", null);
+    }
+
+    /**
+     * Send a message
+     *
+     * @param type   message type
+     * @param header numbers, meaning depends on the type
+     * @param text   text, meaning depends on the type
+     * @param cells  cells, or null for none
+     * @throws IOException if the connection fails
+     */
+    void send(byte type, long[] header, String text, CellSet cells) throws IOException {
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        long[] order = cells == null ? new long[0] : CellCodec.sort(cells);
+        long size = 1 + 4 + 8L * header.length + 4 + textBytes.length + 8 + CellCodec.size(order);
+        if (size > Integer.MAX_VALUE - 4) {
+            throw new IOException("Message of " + size + " bytes is too large");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(4 + (int) size);
+        buffer.putInt((int) size).put(type).putInt(header.length);
+        for (long value : header) {
+            buffer.putLong(value);
+        }
+        buffer.putInt(textBytes.length).put(textBytes);
+        buffer.putLong(CellCodec.blockCount(order));
+        CellCodec.write(buffer, order);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Wait for the next message
+     *
+     * @return the message
+     * @throws EOFException if the other side closed the connection
+     * @throws IOException  if the connection fails or the message is malformed
+     */
+    Message receive() throws IOException {
+        lengthBuffer.clear();
+        readFully(lengthBuffer);
+        lengthBuffer.flip();
+        ByteBuffer buffer = ByteBuffer.allocate(lengthBuffer.getInt());
+        readFully(buffer);
+        buffer.flip();
+        byte type = buffer.get();
+        long[] header = new long[buffer.getInt()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = buffer.getLong();
+        }
+        byte[] textBytes = new byte[buffer.getInt()];
+        buffer.get(textBytes);
+        CellSet cells = new CellSet();
+        CellCodec.read(buffer, buffer.getLong(), cells::addAll);
+        return new Message(type, header, new String(textBytes, StandardCharsets.UTF_8), cells);
+    }
+
+    /**
+     * Wait for the next message, which must be of a given type
+     *
+     * @param type the expected type
+     * @return the message
+     * @throws IOException if the connection fails or another type of message arrives
+     */
+    Message expect(byte type) throws IOException {
+        Message message = receive();
+        if (message.type != type) {
+            throw new IOException("Expected message " + type + ", got " + message.type);
+        }
+        return message;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed");
+            }
+        }
+    }
+
+    /**
+     * A received message
+     */
+    static final class Message {
+        final byte type;
+        final long[] header;
+        final String text;
+        final CellSet cells;
+
+        Message(byte type, long[] header, String text, CellSet cells) {
+            this.type = type;
+            this.header = header;
+            this.text = text;
+            this.cells = cells;
+        }
+    }
+}
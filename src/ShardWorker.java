@@ -0,0 +1,199 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * A worker process of a {@link DistributedBoard}, owning the live cells of one vertical stripe of the plane
+ * <p>
+ * Worker i of n owns the cells with lo &lt;= x &lt; hi, the first and last stripes reaching to the edges of the
+ * plane. Each generation it trades its border columns with the workers on either side over a {@link ShardLink}, so
+ * it knows every neighbor of its own cells, computes their next states, and reports the changes to the
+ * coordinator. Cells it would see born outside its stripe belong to a neighbor, which finds them too.
+ * <p>
+ * Usage: {@code java ShardWorker [PORT [ADDRESS]]}; it listens on the port (any free one by default) of the address
+ * (loopback by default), prints "port N" once it does, serves one coordinator and exits when that disconnects.
+ */
+public class ShardWorker {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final ShardLink coordinator;
+    private final ShardLink left, right; // null at the edges of the plane
+    private final NeighborTable neighbors = new NeighborTable();
+    private CellSet cells = new CellSet();
+    private long lo, hi; // this stripe is lo <= x < hi
+    private Rule rule = Rule.CONWAY;
+
+    private ShardWorker(ShardLink coordinator, ShardLink left, ShardLink right, long lo, long hi) {
+        this.coordinator = coordinator;
+        this.left = left;
+        this.right = right;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * Listen, serve one coordinator, exit
+     *
+     * @param args optional port and address to listen on
+     */
+    public static void main(String[] args) {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+            InetAddress address = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+            server.bind(new InetSocketAddress(address, port));
+            System.out.println("port " + ((InetSocketAddress) server.getLocalAddress()).getPort());
+            System.out.flush();
+            accept(server).serve();
+        } catch (EOFException e) {
+            // the coordinator is gone, so is the job
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Shard worker failed: " + e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Wait for the coordinator and, once told who they are, link up with the neighboring workers
+     *
+     * @param server the listening channel
+     * @return a worker ready to serve
+     * @throws IOException if a connection fails
+     */
+    private static ShardWorker accept(ServerSocketChannel server) throws IOException {
+        ShardLink coordinator = null, left = null;
+        ShardLink.Message hello = null;
+        // the coordinator and the left neighbor may connect in either order; each says who it is first
+        while (hello == null) {
+            ShardLink link = new ShardLink(server.accept());
+            ShardLink.Message first = link.receive();
+            if (first.type == ShardLink.HELLO) {
+                coordinator = link;
+                hello = first;
+            } else if (first.type == ShardLink.PEER) {
+                left = link;
+            } else {
+                throw new IOException("Unexpected first message " + first.type);
+            }
+        }
+        long index = hello.header[0];
+        ShardLink right = null;
+        if (!hello.text.isEmpty()) {
+            int colon = hello.text.lastIndexOf(':');
+            right = ShardLink.connect(new InetSocketAddress(hello.text.substring(0, colon),
+                    Integer.parseInt(hello.text.substring(colon + 1))));
+            right.send(ShardLink.PEER);
+        }
+        while (index > 0 && left == null) {
+            left = new ShardLink(server.accept());
+            left.expect(ShardLink.PEER);
+        }
+        coordinator.send(ShardLink.READY);
+        return new ShardWorker(coordinator, left, right, hello.header[2], hello.header[3]);
+    }
+
+    /**
+     * Answer the coordinator until it disconnects
+     *
+     * @throws IOException if a connection fails
+     */
+    private void serve() throws IOException {
+        while (true) {
+            ShardLink.Message message = coordinator.receive();
+            switch (message.type) {
+                case ShardLink.RULE:
+                    rule = Rule.parse(message.text);
+                    break;
+                case ShardLink.EDIT:
+                    message.cells.forEach(cells::toggle);
+                    break;
+                case ShardLink.CLEAR:
+                    cells = new CellSet();
+                    break;
+                case ShardLink.RANGE:
+                    lo = message.header[0];
+                    hi = message.header[1];
+                    CellSet kept = new CellSet(cells.size());
+                    cells.forEach(c -> {
+                        if (owns(c)) {
+                            kept.add(c);
+                        }
+                    });
+                    kept.addAll(message.cells);
+                    cells = kept;
+                    break;
+                case ShardLink.STEP:
+                    step();
+                    break;
+                default:
+                    throw new IOException("Unexpected message " + message.type);
+            }
+        }
+    }
+
+    /**
+     * Trade borders with the neighbors, compute the next generation of this stripe and report its changes
+     */
+    private void step() throws IOException {
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        CellSet westColumn = new CellSet(), eastColumn = new CellSet();
+        cells.forEach(c -> {
+            long x = Coordinate.unpackX(c);
+            if (x == lo) {
+                westColumn.add(c);
+            }
+            if (x == hi - 1) {
+                eastColumn.add(c);
+            }
+        });
+        // on each link the worker on the left sends first, so the chain of workers cannot wait on itself
+        CellSet westHalo = new CellSet(), eastHalo = new CellSet();
+        if (left != null) {
+            westHalo = left.expect(ShardLink.HALO).cells;
+            left.send(ShardLink.HALO, new long[0], "", westColumn);
+        }
+        if (right != null) {
+            right.send(ShardLink.HALO, new long[0], "", eastColumn);
+            eastHalo = right.expect(ShardLink.HALO).cells;
+        }
+
+        // as in Board.findChanges, with the halo cells setting bits but only owned cells deciding anything
+        neighbors.reset((cells.size() + westHalo.size() + eastHalo.size()) * 4);
+        cells.forEach(this::scatter);
+        westHalo.forEach(this::scatter);
+        eastHalo.forEach(this::scatter);
+        CellSet delta = new CellSet();
+        for (int slot = 0; slot < neighbors.capacity(); slot++) {
+            int mask = neighbors.valueAt(slot);
+            if (mask != 0 && owns(neighbors.keyAt(slot))) {
+                boolean alive = (mask & Board.SELF) != 0;
+                if (rule.next(mask) != alive) {
+                    delta.add(neighbors.keyAt(slot));
+                }
+            }
+        }
+        delta.forEach(cells::toggle);
+        long cpuTime = THREADS.getCurrentThreadCpuTime() - cpuStart;
+        coordinator.send(ShardLink.DONE, new long[] { cells.size(), cpuTime }, "", delta);
+    }
+
+    /**
+     * Set a live cell's bit in the neighborhood mask of each of the nine cells around and including it
+     */
+    private void scatter(long c) {
+        long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                neighbors.add(Coordinate.pack(x + i, y + j), 1 << Rule.bit(-i, -j));
+            }
+        }
+    }
+
+    private boolean owns(long c) {
+        long x = Coordinate.unpackX(c);
+        return x >= lo && x < hi;
+    }
+}
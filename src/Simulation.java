@@ -0,0 +1,603 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Owns a board and runs it on a dedicated thread, publishing immutable snapshots for the UI
+ * <p>
+ * Every change to the board happens on the simulation thread. A reader asks for frames with
+ * {@link #takeSnapshot()}; the simulation publishes at most one snapshot per request, so while the reader is busy,
+ * intermediate generations are skipped rather than queued, and their changes are merged into the next snapshot.
+ * The live cells and changes a snapshot carries are views of {@link TileIndex} sets kept up to date from each
+ * generation's delta, so publishing never copies the board, and the display can look up just the cells on screen.
+ */
+public class Simulation {
+    private static final long RATE_WINDOW = 500_000_000L; // nanoseconds over which generations per second is measured
+    private static final long HISTORY_BUDGET = 64L << 20; // bytes of compressed history kept for rewinding, by default
+    private static final long KEYFRAME_MEMORY_BUDGET = 64L << 20; // bytes of timeline keyframes kept in memory
+    private static final long KEYFRAME_DISK_BUDGET = 1L << 30; // bytes of timeline keyframes spilled to disk
+    private static final long SEEK_SLICE = 50_000_000L; // nanoseconds of evolving between progress updates of a seek
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicReference<Snapshot> published = new AtomicReference<>();
+    private final AtomicBoolean frameRequested = new AtomicBoolean(true);
+    private final AtomicLong seekCount = new AtomicLong(); // bumped to call off the seek under way, if any
+    private final AtomicLong runCount = new AtomicLong(); // bumped on each start, so only the newest run goes on
+    private final Metrics metrics = new Metrics();
+    private volatile boolean running = false;
+    private volatile boolean maxSpeed = false;
+    private volatile long delay = 100; // milliseconds between generations when running
+    private volatile long historyStart = 0; // earliest generation rewind() can reach
+    private volatile long timelineStart = 0, timelineEnd = 0; // generations seek() can reach without evolving further
+
+    // only touched on the simulation thread
+    private LifeEngine board;
+    private final TileIndex liveCells = new TileIndex(); // the board's live cells, bucketed for viewport queries
+    private TileIndex pendingDelta = new TileIndex();
+    private boolean dirty = true; // something changed since the last snapshot
+    private long rateStartTime = System.nanoTime(), rateStartGen = 0;
+    private double genRate = 0;
+    private final Journal journal = new Journal(HISTORY_BUDGET);
+    private final KeyframeCache keyframes = new KeyframeCache(KEYFRAME_MEMORY_BUDGET, KEYFRAME_DISK_BUDGET);
+    private int densityLevel = 0; // level of the pyramid included in snapshots, 0 for none
+    private DensityPyramid pyramid; // null unless a density level is wanted
+    private FrameExporter recorder; // null unless recording
+
+    /**
+     * Start a simulation thread for a board
+     *
+     * @param board the board, which must not be touched by any other thread from now on
+     */
+    public Simulation(LifeEngine board) {
+        this.board = board;
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "JGoL simulation");
+            t.setDaemon(true);
+            return t;
+        });
+        // the first snapshot introduces every cell the board starts with
+        executor.execute(() -> {
+            restartHistory();
+            changed(board.getLiveCells());
+        });
+    }
+
+    /**
+     * Take the newest unseen snapshot, if there is one, and ask for the next
+     *
+     * @return the snapshot, or null if nothing changed since the last call
+     */
+    public Snapshot takeSnapshot() {
+        Snapshot s = published.getAndSet(null);
+        if (frameRequested.compareAndSet(false, true)) {
+            // publish right away if the board changed after the last snapshot
+            executor.execute(this::publish);
+        }
+        return s;
+    }
+
+    /**
+     * Getter for the metrics
+     *
+     * @return measurements of every generation, and of rendering when the display records into them
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Evolve the board once
+     */
+    public void step() {
+        cancelSeek();
+        executor.execute(() -> changed(evolve()));
+    }
+
+    /**
+     * Flip a cell's state
+     *
+     * @param c coordinates of the cell
+     */
+    public void toggleState(Coordinate c) {
+        cancelSeek();
+        executor.execute(() -> {
+            board.toggleState(c);
+            restartHistory();
+            CellSet delta = new CellSet();
+            delta.add(c.key());
+            changed(delta);
+        });
+    }
+
+    /**
+     * Stop running and kill all live cells
+     */
+    public void clear() {
+        running = false;
+        cancelSeek();
+        executor.execute(() -> {
+            changed(board.clear());
+            restartHistory();
+            resetGenRate();
+        });
+    }
+
+    /**
+     * Stop running and replace the live cells with a pattern read from a file, or the whole state with a checkpoint
+     *
+     * @param file    an RLE, Macrocell or checkpoint file
+     * @param onError called on the simulation thread if the file cannot be read; cells read before the error stay
+     */
+    public void load(File file, Consumer<IOException> onError) {
+        running = false;
+        cancelSeek();
+        executor.execute(() -> {
+            CellSet delta = board.clear();
+            try {
+                PatternIO.read(file, board);
+            } catch (IOException e) {
+                onError.accept(e);
+            }
+            // cells live both before and after did not change
+            board.getLiveCells().forEach(delta::toggle);
+            restartHistory();
+            changed(delta);
+            resetGenRate();
+        });
+    }
+
+    /**
+     * Write the live cells to a pattern file, or the whole state to a checkpoint
+     *
+     * @param file    the file to write: a checkpoint if the name ends in .jgol, Macrocell for .mc, RLE otherwise
+     * @param onError called on the simulation thread if the file cannot be written
+     */
+    public void save(File file, Consumer<IOException> onError) {
+        executor.execute(() -> {
+            try {
+                PatternIO.save(file, board);
+            } catch (IOException e) {
+                onError.accept(e);
+            }
+        });
+    }
+
+    /**
+     * Change the rule the board evolves by
+     *
+     * @param rule the new rule
+     */
+    public void setRule(Rule rule) {
+        cancelSeek();
+        executor.execute(() -> {
+            board.setRule(rule);
+            restartHistory();
+            dirty = true;
+            publish();
+        });
+    }
+
+    /**
+     * Move the live cells and the rule into a different engine and simulate that one from now on
+     * <p>
+     * An engine of limited extent drops or wraps the cells it cannot hold, so the cells that differ between the
+     * index of live cells and the new engine are passed on as a change like any other, leaving the index, and every
+     * snapshot after, exactly the new engine's cells.
+     *
+     * @param next an empty engine
+     */
+    public void replaceEngine(LifeEngine next) {
+        cancelSeek();
+        executor.execute(() -> {
+            next.setRule(board.getRule());
+            board.getLiveCells().forEach(c -> next.setCellState(Coordinate.fromKey(c), true));
+            CellSet delta = new CellSet();
+            liveCells.view().forEach(delta::toggle);
+            // cells live both in the index and in the new engine did not change
+            next.getLiveCells().forEach(delta::toggle);
+            closeEngine();
+            board = next;
+            restartHistory();
+            resetGenRate();
+            changed(delta);
+        });
+    }
+
+    /**
+     * Stop running and go back to an earlier generation kept in the history
+     *
+     * @param generation the generation to return to; clamped to the range kept, see {@link #getHistoryStart()}
+     */
+    public void rewind(long generation) {
+        running = false;
+        cancelSeek();
+        executor.execute(() -> rewindTo(generation));
+    }
+
+    /**
+     * Stop running and go back one generation, if the history has it
+     */
+    public void stepBack() {
+        running = false;
+        cancelSeek();
+        executor.execute(() -> rewindTo(board.getGenCount() - 1));
+    }
+
+    /**
+     * Go back to an earlier generation; must run on the simulation thread
+     *
+     * @param generation the generation to return to, clamped to the history
+     */
+    private void rewindTo(long generation) {
+        long target = Math.max(journal.getFirstGen(), Math.min(generation, board.getGenCount()));
+        if (target == board.getGenCount()) {
+            return;
+        }
+        changed(journal.rewind(board, target));
+        historyStart = journal.getFirstGen();
+        resetGenRate();
+    }
+
+    /**
+     * Stop running and go to any generation since the last edit, load or rule change, earlier or later than this one
+     * <p>
+     * Generations still in the history are reached by rewinding; others by restoring the nearest keyframe of the
+     * timeline and evolving from there, which also goes past the furthest generation reached so far. The evolving is
+     * done a slice at a time, publishing each generation reached, and any other command given meanwhile calls the
+     * rest of the way off, so a target far ahead never holds up the simulation.
+     *
+     * @param generation the generation to go to; clamped to the start of the timeline, see {@link #getTimelineStart()}
+     */
+    public void seek(long generation) {
+        running = false;
+        long token = cancelSeek();
+        executor.execute(() -> {
+            long target = Math.max(keyframes.getFirstGen(), generation);
+            if (target >= journal.getFirstGen() && target <= board.getGenCount()) {
+                rewindTo(target);
+                return;
+            }
+            changed(keyframes.restore(board, target));
+            journal.reset(board);
+            historyStart = journal.getFirstGen();
+            updateTimeline();
+            resetGenRate();
+            seekSlice(token, target, 1);
+        });
+    }
+
+    /**
+     * Evolve part of the way to a seek's target, then queue the next part behind any other commands
+     *
+     * @param token       the seek's number; if another seek or command came since, stop here
+     * @param target      the generation to go to
+     * @param generations how many generations to try to evolve in this slice
+     */
+    private void seekSlice(long token, long target, long generations) {
+        if (token != seekCount.get() || board.getGenCount() >= target) {
+            return;
+        }
+        long start = System.nanoTime();
+        keyframes.advance(board, Math.min(generations, target - board.getGenCount()));
+        long elapsed = System.nanoTime() - start;
+        // the engine moved without reporting its changes, so tell them from the cells shown
+        CellSet delta = new CellSet();
+        liveCells.view().forEach(delta::toggle);
+        board.getLiveCells().forEach(delta::toggle);
+        journal.reset(board);
+        historyStart = journal.getFirstGen();
+        updateTimeline();
+        changed(delta);
+        // aim the next slice at about SEEK_SLICE of evolving
+        long next = elapsed < SEEK_SLICE / 2 && generations < Long.MAX_VALUE / 2 ? generations * 2
+                : elapsed > SEEK_SLICE ? Math.max(1, generations / 2) : generations;
+        executor.execute(() -> seekSlice(token, target, next));
+    }
+
+    /**
+     * Call off the seek under way, if any, after its current slice
+     *
+     * @return the number of the next seek
+     */
+    private long cancelSeek() {
+        return seekCount.incrementAndGet();
+    }
+
+    /**
+     * Getter for the start of the timeline
+     *
+     * @return the earliest generation seek() can currently reach; edits and loads restart the timeline
+     */
+    public long getTimelineStart() {
+        return timelineStart;
+    }
+
+    /**
+     * Getter for the end of the timeline
+     *
+     * @return the furthest generation reached since the timeline started
+     */
+    public long getTimelineEnd() {
+        return timelineEnd;
+    }
+
+    /**
+     * Getter for the start of the history
+     *
+     * @return the earliest generation rewind() can currently reach; edits and loads restart the history
+     */
+    public long getHistoryStart() {
+        return historyStart;
+    }
+
+    /**
+     * Change how much memory the history may take; older generations are dropped to stay within it
+     *
+     * @param bytes budget for the compressed history, in bytes
+     */
+    public void setHistoryBudget(long bytes) {
+        executor.execute(() -> {
+            journal.setBudget(bytes);
+            historyStart = journal.getFirstGen();
+        });
+    }
+
+    /**
+     * Choose the level of the density pyramid that snapshots carry, for drawing zoomed-out views
+     * <p>
+     * The pyramid is only kept up to date while a level is wanted, so a display at full detail costs nothing.
+     *
+     * @param level blocks of 2^level cells a side, from 1 to DensityPyramid.MAX_LEVEL, or 0 for no density map
+     */
+    public void setDensityLevel(int level) {
+        executor.execute(() -> {
+            densityLevel = level;
+            if (level == 0) {
+                pyramid = null;
+            } else if (pyramid == null) {
+                pyramid = new DensityPyramid(board.getLiveCells());
+            }
+            dirty = true;
+            publish();
+        });
+    }
+
+    /**
+     * Start recording a rectangle of the board, from the current generation on, replacing any recording under way
+     * <p>
+     * Every change to the board from now on is handed to a {@link FrameExporter}, which encodes frames on a thread of
+     * its own and skips generations rather than hold up the simulation.
+     *
+     * @param file     an animated GIF if the name ends in .gif, otherwise the name for a numbered series of PNGs
+     * @param left     smallest x-coordinate recorded
+     * @param bottom   smallest y-coordinate recorded
+     * @param columns  cells across, at most 16384 pixels' worth
+     * @param rows     cells down, at most 16384 pixels' worth
+     * @param cellSize pixels a side per cell
+     * @param onError  called on the encoding thread if the file cannot be written
+     */
+    public void startRecording(File file, long left, long bottom, int columns, int rows, int cellSize,
+                               Consumer<IOException> onError) {
+        executor.execute(() -> {
+            finishRecording();
+            recorder = new FrameExporter(file, board.getLiveCells(), board.getGenCount(), left, bottom, columns, rows,
+                    cellSize, onError);
+        });
+    }
+
+    /**
+     * Stop recording; the frames still waiting are written in the background
+     */
+    public void stopRecording() {
+        executor.execute(this::finishRecording);
+    }
+
+    /**
+     * Stop recording and wait a while for the frames still waiting to be written, as before exiting
+     *
+     * @param millis longest wait, in milliseconds
+     * @return true if nothing was being recorded or the recording was finished in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean stopRecording(long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        FrameExporter stopped;
+        try {
+            stopped = executor.submit(() -> {
+                FrameExporter r = recorder;
+                finishRecording();
+                return r;
+            }).get(millis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+        long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        return stopped == null || stopped.await(Math.max(1, left));
+    }
+
+    private void finishRecording() {
+        if (recorder != null) {
+            recorder.finish(board.getGenCount());
+            recorder = null;
+        }
+    }
+
+    /**
+     * Start or stop evolving continuously
+     *
+     * @param run true to start
+     */
+    public void setRunning(boolean run) {
+        if (run && !running) {
+            running = true;
+            cancelSeek();
+            long token = runCount.incrementAndGet();
+            executor.execute(() -> runStep(token));
+        } else {
+            running = run;
+        }
+    }
+
+    /**
+     * Check whether the board is evolving continuously
+     *
+     * @return true if running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Setter for the pause between generations while running
+     *
+     * @param millis pause in milliseconds
+     */
+    public void setDelay(long millis) {
+        delay = millis;
+    }
+
+    /**
+     * Evolve as fast as possible while running, ignoring the delay
+     *
+     * @param enabled true to ignore the delay
+     */
+    public void setMaxSpeed(boolean enabled) {
+        maxSpeed = enabled;
+    }
+
+    /**
+     * One generation of continuous evolution, rescheduling itself while running
+     *
+     * @param token the run's number; a step still scheduled from a run stopped and started again since ends there,
+     *              so a quick stop and start never leaves two runs going
+     */
+    private void runStep(long token) {
+        if (token != runCount.get()) {
+            return;
+        }
+        if (!running) {
+            genRate = 0;
+            dirty = true;
+            publish();
+            return;
+        }
+        changed(evolve());
+        if (maxSpeed) {
+            executor.execute(() -> runStep(token));
+        } else {
+            executor.schedule(() -> runStep(token), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Evolve the board once, measuring the generation and keeping it in the history
+     *
+     * @return cells whose status has changed
+     */
+    private CellSet evolve() {
+        CellSet delta = metrics.evolve(board);
+        journal.record(board, delta);
+        historyStart = journal.getFirstGen();
+        keyframes.record(board, board.getComputeTime());
+        updateTimeline();
+        return delta;
+    }
+
+    /**
+     * Release whatever the current engine holds outside this JVM's heap, such as worker processes
+     */
+    private void closeEngine() {
+        if (board instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) board).close();
+            } catch (Exception e) {
+                // the engine is being dropped either way
+            }
+        }
+    }
+
+    /**
+     * Forget the history and the timeline, after a change that did not come from evolving
+     */
+    private void restartHistory() {
+        journal.reset(board);
+        historyStart = journal.getFirstGen();
+        keyframes.reset(board);
+        updateTimeline();
+    }
+
+    /**
+     * Publish the range of the timeline for other threads
+     */
+    private void updateTimeline() {
+        timelineStart = keyframes.getFirstGen();
+        timelineEnd = keyframes.getLastGen();
+    }
+
+    /**
+     * Record changes to the board and publish them if a frame has been requested
+     *
+     * @param delta exactly the cells whose status has changed
+     */
+    private void changed(CellSet delta) {
+        liveCells.toggleAll(delta);
+        if (pyramid != null) {
+            // asks the index rather than the board: a torus reads coordinates beyond its edges as the wrapped cells
+            pyramid.update(delta, liveCells::contains);
+        }
+        pendingDelta.addAll(delta);
+        if (recorder != null) {
+            recorder.offer(delta, board.getGenCount());
+        }
+        dirty = true;
+        publish();
+    }
+
+    /**
+     * Publish a snapshot if something changed and the reader has asked for one
+     */
+    private void publish() {
+        updateGenRate();
+        if (!dirty || !frameRequested.compareAndSet(true, false)) {
+            return;
+        }
+        // an untaken snapshot is replaced by this one, so carry its changes along
+        Snapshot stale = published.getAndSet(null);
+        if (stale != null) {
+            pendingDelta.addAll(stale.getDelta());
+        }
+        published.set(new Snapshot(liveCells.view(), pendingDelta.view(), board.getGenCount(),
+                board.getComputeTime(), board.getCpuTime(), genRate, board.getRule(),
+                board instanceof Board ? ((Board) board).getCycle() : null,
+                pyramid != null ? pyramid.getLevel(densityLevel).copy() : null));
+        pendingDelta = new TileIndex();
+        dirty = false;
+    }
+
+    /**
+     * Restart measuring generations per second, after the generation count has jumped
+     */
+    private void resetGenRate() {
+        rateStartTime = System.nanoTime();
+        rateStartGen = board.getGenCount();
+    }
+
+    /**
+     * Recompute generations per second once the measuring window has passed
+     */
+    private void updateGenRate() {
+        long now = System.nanoTime();
+        if (now - rateStartTime >= RATE_WINDOW) {
+            genRate = running ? (board.getGenCount() - rateStartGen) * 1e9 / (now - rateStartTime) : 0;
+            rateStartTime = now;
+            rateStartGen = board.getGenCount();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * An immutable picture of a board at one generation, handed from the simulation thread to readers
+ * <p>
+ * The cell sets belong to the snapshot and must not be modified.
+ */
+public final class Snapshot {
+    private final CellSet liveCells;
+    private final CellSet delta;
+    private final long genCount;
+    private final long computeTime;
+    private final long cpuTime;
+    private final double genRate;
+    private final Rule rule;
+    private final Cycle cycle;
+    private final DensityMap density;
+
+    /**
+     * Create a snapshot
+     *
+     * @param liveCells   live cells, owned by the snapshot from now on
+     * @param delta       cells changed since the previous snapshot taken by the reader, owned by the snapshot
+     * @param genCount    generation count
+     * @param computeTime wall-clock time of the last generation, in nanoseconds
+     * @param cpuTime     CPU time of the last generation, in nanoseconds
+     * @param genRate     recent generations per second
+     * @param rule        the rule the board evolves by
+     * @param cycle       the cycle the board is on, or null if none is known
+     * @param density     one level of the board's density pyramid, owned by the snapshot, or null
+     */
+    Snapshot(CellSet liveCells, CellSet delta, long genCount, long computeTime, long cpuTime, double genRate, Rule rule,
+             Cycle cycle, DensityMap density) {
+        this.liveCells = liveCells;
+        this.delta = delta;
+        this.genCount = genCount;
+        this.computeTime = computeTime;
+        this.cpuTime = cpuTime;
+        this.genRate = genRate;
+        this.rule = rule;
+        this.cycle = cycle;
+        this.density = density;
+    }
+
+    /**
+     * Getter for cell state
+     *
+     * @param c coordinates of the cell
+     * @return state of the cell in this snapshot
+     */
+    public boolean getCellState(Coordinate c) {
+        return liveCells.contains(c.key());
+    }
+
+    /**
+     * Getter for live cells
+     *
+     * @return CellSet of live cells; do not modify
+     */
+    public CellSet getLiveCells() {
+        return liveCells;
+    }
+
+    /**
+     * Getter for the changes since the previous snapshot
+     *
+     * @return CellSet of cells whose status has changed; do not modify
+     */
+    public CellSet getDelta() {
+        return delta;
+    }
+
+    /**
+     * Getter for generation count
+     *
+     * @return generation count
+     */
+    public long getGenCount() {
+        return genCount;
+    }
+
+    /**
+     * Getter for compute time
+     *
+     * @return wall-clock time of the last generation, in nanoseconds
+     */
+    public long getComputeTime() {
+        return computeTime;
+    }
+
+    /**
+     * Getter for CPU time
+     *
+     * @return CPU time of the last generation, in nanoseconds
+     */
+    public long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * Getter for simulation speed
+     *
+     * @return generations per second measured over the last second or so, 0 when stopped
+     */
+    public double getGenRate() {
+        return genRate;
+    }
+
+    /**
+     * Getter for the rule
+     *
+     * @return the rule the board evolves by
+     */
+    public Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Getter for the cycle
+     *
+     * @return the cycle the board is on, or null if none is known
+     */
+    public Cycle getCycle() {
+        return cycle;
+    }
+
+    /**
+     * Getter for the density map
+     *
+     * @return populations of the blocks at the level asked for with Simulation.setDensityLevel(), or null if none
+     * was; do not modify
+     */
+    public DensityMap getDensity() {
+        return density;
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command-line entry point that runs many random soups and counts the objects they leave behind
+ * <p>
+ * Soup i of a search is a 16x16 square filled at random with density 1/2 from a generator seeded by the search seed
+ * and i, so any soup can be run again from those two numbers. Soups are independent: each worker thread takes the
+ * next index, runs it on a board of its own until its population has repeated with some period up to
+ * {@value ObjectCensus#MAX_PERIOD} for a while, and adds what is left to a shared {@link ObjectCensus}. The only
+ * state the workers share is the census and a counter, so throughput grows with the number of cores.
+ * Usage: {@code java SoupSearch [options]}, see {@link #USAGE}.
+ */
+public class SoupSearch {
+    private static final String USAGE = String.join("\n",
+            "Usage: java SoupSearch [options]",
+            "  -n, --soups N            number of soups to run (default 10000)",
+            "  -s, --seed SEED          seed of the search (default: random); soup i of a seed is always the same",
+            "  -t, --threads N          worker threads (default: one per processor)",
+            "  -R, --rule RULE          rule in B/S notation (default B3/S23)",
+            "  -g, --generations N      give up on a soup that has not settled after N generations (default 50000)",
+            "  -r, --report SECONDS     seconds between progress lines (default 1)");
+    private static final int SOUP_SIZE = 16;
+    private static final int SETTLE_WINDOW = 240; // generations the population must repeat for before a soup settles
+
+    private final long soups;
+    private final long seed;
+    private final Rule rule;
+    private final long maxGenerations;
+    private final ObjectCensus census;
+    private final AtomicLong nextSoup = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicLong generations = new AtomicLong();
+
+    /**
+     * Set up a search
+     *
+     * @param soups          number of soups to run
+     * @param seed           seed of the search
+     * @param rule           the rule to run the soups by
+     * @param maxGenerations generations after which an unsettled soup is given up on
+     */
+    SoupSearch(long soups, long seed, Rule rule, long maxGenerations) {
+        this.soups = soups;
+        this.seed = seed;
+        this.rule = rule;
+        this.maxGenerations = maxGenerations;
+        census = new ObjectCensus(rule);
+    }
+
+    /**
+     * Parse the command line, search and print the census
+     *
+     * @param args see {@link #USAGE}
+     */
+    public static void main(String[] args) {
+        long soups = 10000, seed = new SplittableRandom().nextLong(), maxGenerations = 50000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Rule rule = Rule.CONWAY;
+        double reportSeconds = 1;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-n":
+                    case "--soups":
+                        soups = Long.parseLong(args[++i]);
+                        break;
+                    case "-s":
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "-t":
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        if (threads < 1) {
+                            throw new IllegalArgumentException("Need at least one thread");
+                        }
+                        break;
+                    case "-R":
+                    case "--rule":
+                        rule = Rule.parse(args[++i]);
+                        break;
+                    case "-g":
+                    case "--generations":
+                        maxGenerations = Long.parseLong(args[++i]);
+                        break;
+                    case "-r":
+                    case "--report":
+                        reportSeconds = Double.parseDouble(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unexpected argument " + args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing option value" : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        log("searching %,d soups with seed %d, rule %s, on %d threads", soups, seed, rule, threads);
+        new SoupSearch(soups, seed, rule, maxGenerations).run(threads, (long) (reportSeconds * 1e9));
+    }
+
+    /**
+     * Run every soup, printing progress along the way and the census at the end
+     *
+     * @param threads        number of worker threads
+     * @param reportInterval nanoseconds between progress lines
+     */
+    void run(int threads, long reportInterval) {
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "JGoL soup search");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+        workers.shutdown();
+        long lastReportTime = start, lastFinished = 0;
+        try {
+            while (!workers.awaitTermination(reportInterval, TimeUnit.NANOSECONDS)) {
+                long now = System.nanoTime(), done = finished.get();
+                log("%,d soups  %,.1f soups/s  %,d objects named", done,
+                        (done - lastFinished) / Math.max((now - lastReportTime) / 1e9, 1e-9), census.getShapeCount());
+                lastReportTime = now;
+                lastFinished = done;
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log("done: %,d soups in %.3f s (%,.1f soups/s, %,.0f gen/s)", finished.get(), seconds,
+                finished.get() / seconds, generations.get() / seconds);
+        ArrayList<Map.Entry<String, Long>> counts = new ArrayList<>(census.getCounts().entrySet());
+        counts.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? a.getKey().compareTo(b.getKey()) : Long.compare(b.getValue(), a.getValue()));
+        long total = counts.stream().mapToLong(Map.Entry::getValue).sum();
+        for (Map.Entry<String, Long> entry : counts) {
+            log("%,14d  %8.4f%%  %s", entry.getValue(), 100.0 * entry.getValue() / total, entry.getKey());
+        }
+    }
+
+    /**
+     * Run soups on the calling thread until none are left
+     */
+    private void work() {
+        for (long i = nextSoup.getAndIncrement(); i < soups; i = nextSoup.getAndIncrement()) {
+            LifeEngine board = runSoup(i);
+            if (board != null) {
+                census.add(board.getLiveCells());
+            }
+            finished.incrementAndGet();
+        }
+    }
+
+    /**
+     * Run one soup until it settles
+     *
+     * @param index index of the soup in this search
+     * @return the settled board, or null if the soup did not settle in time
+     */
+    private LifeEngine runSoup(long index) {
+        TiledBoard board = new TiledBoard(); // the fastest engine for a few thousand cells
+        board.setRule(rule);
+        long[] cells = soup(seed, index);
+        board.addCells(cells, cells.length);
+        int[] populations = new int[ObjectCensus.MAX_PERIOD + 1]; // the latest populations, as a ring buffer
+        int[] runs = new int[ObjectCensus.MAX_PERIOD + 1]; // generations in a row whose population matched p before
+        for (long gen = 0; gen < maxGenerations; gen++) {
+            int newest = (int) (gen % populations.length);
+            int population = (int) board.getPopulation();
+            populations[newest] = population;
+            for (int p = 1; p <= ObjectCensus.MAX_PERIOD; p++) {
+                int earlier = newest - p < 0 ? newest - p + populations.length : newest - p;
+                runs[p] = gen >= p && populations[earlier] == population ? runs[p] + 1 : 0;
+                if (runs[p] >= SETTLE_WINDOW) {
+                    generations.addAndGet(gen);
+                    return board;
+                }
+            }
+            board.advance(1);
+        }
+        generations.addAndGet(maxGenerations);
+        log("soup %d of seed %d did not settle within %,d generations", index, seed, maxGenerations);
+        return null;
+    }
+
+    /**
+     * The cells of a soup
+     *
+     * @param seed  seed of the search
+     * @param index index of the soup
+     * @return packed coordinates of its live cells
+     */
+    static long[] soup(long seed, long index) {
+        SplittableRandom random = new SplittableRandom(CellSet.mix(seed) + index);
+        long[] cells = new long[SOUP_SIZE * SOUP_SIZE];
+        int count = 0;
+        for (int x = 0; x < SOUP_SIZE; x++) {
+            for (int y = 0; y < SOUP_SIZE; y++) {
+                if (random.nextBoolean()) {
+                    cells[count++] = Coordinate.pack(x, y);
+                }
+            }
+        }
+        return Arrays.copyOf(cells, count);
+    }
+
+    private static void log(String format, Object... args) {
+        synchronized (System.out) {
+            System.out.println(String.format(Locale.ROOT, format, args));
+        }
+    }
+}
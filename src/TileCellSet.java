@@ -0,0 +1,166 @@
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * One generation of a {@link TiledBoard} or a {@link TileIndex} seen as a read-only {@link CellSet}, sharing its tiles
+ * <p>
+ * The board never changes a tile or tile map once it has been handed out here: evolving builds a new map, reusing
+ * the tiles that did not change, and edits copy what they touch. So taking one costs nothing, and it stays valid for
+ * as long as a reader keeps it, on any thread, while the board moves on. Methods that would modify the set throw
+ * UnsupportedOperationException; {@link #copy()} gives an ordinary set.
+ */
+final class TileCellSet extends CellSet {
+    private final Map<Long, long[]> tiles;
+    private int size = -1; // counted on first use; racing threads count the same value
+
+    /**
+     * Wrap a tile map that will no longer change
+     *
+     * @param tiles tiles by packed tile coordinates, as in TiledBoard
+     */
+    TileCellSet(Map<Long, long[]> tiles) {
+        this.tiles = tiles;
+    }
+
+    @Override
+    public boolean contains(long key) {
+        long x = Coordinate.unpackX(key), y = Coordinate.unpackY(key);
+        long[] tile = tiles.get(TiledBoard.tileKey(x, y));
+        int mask = TiledBoard.TILE_SIZE - 1;
+        return tile != null && (tile[(int) (y & mask)] >>> (x & mask) & 1) != 0;
+    }
+
+    @Override
+    public boolean add(long key) {
+        throw new UnsupportedOperationException("Tile generations are read-only");
+    }
+
+    @Override
+    public boolean remove(long key) {
+        throw new UnsupportedOperationException("Tile generations are read-only");
+    }
+
+    @Override
+    public void addAll(long[] keys, int count) {
+        throw new UnsupportedOperationException("Tile generations are read-only");
+    }
+
+    @Override
+    public void ensureCapacity(int expected) {
+        throw new UnsupportedOperationException("Tile generations are read-only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Tile generations are read-only");
+    }
+
+    @Override
+    public int size() {
+        int n = size;
+        if (n < 0) {
+            n = 0;
+            for (long[] tile : tiles.values()) {
+                for (long row : tile) {
+                    n += Long.bitCount(row);
+                }
+            }
+            size = n;
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tiles.isEmpty(); // empty tiles are dropped
+    }
+
+    @Override
+    public void forEach(LongConsumer action) {
+        for (Map.Entry<Long, long[]> entry : tiles.entrySet()) {
+            long originX = Coordinate.unpackX(entry.getKey()) << TiledBoard.TILE_BITS;
+            long originY = Coordinate.unpackY(entry.getKey()) << TiledBoard.TILE_BITS;
+            long[] tile = entry.getValue();
+            for (int r = 0; r < TiledBoard.TILE_SIZE; r++) {
+                for (long bits = tile[r]; bits != 0; bits &= bits - 1) {
+                    action.accept(Coordinate.pack(originX + Long.numberOfTrailingZeros(bits), originY + r));
+                }
+            }
+        }
+    }
+
+    /**
+     * Run an action on the packed key of every cell inside a rectangle, looking only at the tiles it covers
+     */
+    @Override
+    public void forEachIn(long left, long bottom, long width, long height, LongConsumer action) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        long right = left + width - 1, top = bottom + height - 1;
+        long tx0 = left >> TiledBoard.TILE_BITS, tx1 = right >> TiledBoard.TILE_BITS;
+        long ty0 = bottom >> TiledBoard.TILE_BITS, ty1 = top >> TiledBoard.TILE_BITS;
+        if ((tx1 - tx0 + 1) * (ty1 - ty0 + 1) <= tiles.size()) {
+            // fewer tiles under the rectangle than in the set: look each one up
+            for (long tx = tx0; tx <= tx1; tx++) {
+                for (long ty = ty0; ty <= ty1; ty++) {
+                    long[] tile = tiles.get(Coordinate.pack(tx, ty));
+                    if (tile != null) {
+                        forEachIn(tx, ty, tile, left, bottom, right, top, action);
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, long[]> entry : tiles.entrySet()) {
+                long tx = Coordinate.unpackX(entry.getKey()), ty = Coordinate.unpackY(entry.getKey());
+                if (tx >= tx0 && tx <= tx1 && ty >= ty0 && ty <= ty1) {
+                    forEachIn(tx, ty, entry.getValue(), left, bottom, right, top, action);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit the cells of one tile inside the rectangle from (left, bottom) to (right, top) inclusive
+     */
+    private static void forEachIn(long tx, long ty, long[] tile, long left, long bottom, long right, long top,
+                                  LongConsumer action) {
+        long originX = tx << TiledBoard.TILE_BITS, originY = ty << TiledBoard.TILE_BITS;
+        int mask = TiledBoard.TILE_SIZE - 1;
+        // columns of the tile inside the rectangle, as a bit mask
+        long columns = -1L;
+        if (left > originX) {
+            columns &= -1L << (left & mask);
+        }
+        if (right < originX + mask) {
+            columns &= -1L >>> (mask - (right & mask));
+        }
+        int r0 = bottom > originY ? (int) (bottom & mask) : 0;
+        int r1 = top < originY + mask ? (int) (top & mask) : mask;
+        for (int r = r0; r <= r1; r++) {
+            for (long bits = tile[r] & columns; bits != 0; bits &= bits - 1) {
+                action.accept(Coordinate.pack(originX + Long.numberOfTrailingZeros(bits), originY + r));
+            }
+        }
+    }
+
+    @Override
+    public long[] toArray() {
+        long[] out = new long[size()];
+        int[] n = { 0 };
+        forEach(k -> out[n[0]++] = k);
+        return out;
+    }
+
+    /**
+     * Copy the cells into an ordinary set
+     *
+     * @return a modifiable set of the same cells
+     */
+    @Override
+    public CellSet copy() {
+        CellSet copy = new CellSet(size());
+        forEach(copy::add);
+        return copy;
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A set of cells bucketed into 64x64 tiles of bit rows, laid out as in {@link TiledBoard}, kept up to date from
+ * deltas and handed to readers as {@link TileCellSet} views
+ * <p>
+ * The simulation keeps the board's live cells, and the changes since the last snapshot, in these, so the display
+ * can ask for the cells inside its viewport and look at only the tiles there, however large the board. Views are
+ * persistent like TiledBoard's generations: a tile or map handed out is never modified again, and the next change
+ * copies what it touches, so taking a view costs nothing and a change costs about the cells it touches plus, once
+ * per view, a copy of the tile map. Not thread-safe; owned by the simulation thread.
+ */
+final class TileIndex {
+    private HashMap<Long, long[]> tiles = new HashMap<>();
+    private boolean tilesShared = false; // tiles has been handed out, so changes must copy it
+    private final HashSet<Long> ownedTiles = new HashSet<>(); // keys of tiles never handed out, safe to change
+    private long lastKey; // the tile changed last, which the next change most likely touches too
+    private long[] lastTile;
+
+    /**
+     * Check whether a cell is in the set
+     *
+     * @param key packed coordinates of the cell
+     * @return true if it is
+     */
+    boolean contains(long key) {
+        long x = Coordinate.unpackX(key), y = Coordinate.unpackY(key);
+        long[] tile = tiles.get(TiledBoard.tileKey(x, y));
+        int mask = TiledBoard.TILE_SIZE - 1;
+        return tile != null && (tile[(int) (y & mask)] >>> (x & mask) & 1) != 0;
+    }
+
+    /**
+     * Flip the state of every cell of a delta
+     *
+     * @param delta cells whose state changed
+     */
+    void toggleAll(CellSet delta) {
+        delta.forEach(c -> {
+            long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+            long key = TiledBoard.tileKey(x, y);
+            long[] tile = editableTile(key);
+            int row = (int) (y & (TiledBoard.TILE_SIZE - 1));
+            tile[row] ^= 1L << (x & (TiledBoard.TILE_SIZE - 1));
+            if (tile[row] == 0 && isEmpty(tile)) {
+                // empty tiles are dropped, as TileCellSet expects
+                tiles.remove(key);
+                ownedTiles.remove(key);
+                lastTile = null;
+            }
+        });
+    }
+
+    /**
+     * Add every cell of a set
+     *
+     * @param cells the cells to add
+     */
+    void addAll(CellSet cells) {
+        cells.forEach(c -> {
+            long x = Coordinate.unpackX(c), y = Coordinate.unpackY(c);
+            editableTile(TiledBoard.tileKey(x, y))[(int) (y & (TiledBoard.TILE_SIZE - 1))] |=
+                    1L << (x & (TiledBoard.TILE_SIZE - 1));
+        });
+    }
+
+    /**
+     * Hand the current cells out
+     *
+     * @return a read-only set of the cells, unaffected by later changes
+     */
+    TileCellSet view() {
+        tilesShared = true;
+        ownedTiles.clear();
+        lastTile = null;
+        return new TileCellSet(tiles);
+    }
+
+    /**
+     * Get a tile that may be modified, creating it or copying a shared one first
+     */
+    private long[] editableTile(long key) {
+        if (lastTile != null && key == lastKey) {
+            return lastTile;
+        }
+        if (tilesShared) {
+            tiles = new HashMap<>(tiles);
+            tilesShared = false;
+        }
+        long[] tile = tiles.get(key);
+        if (tile == null) {
+            tile = new long[TiledBoard.TILE_SIZE];
+            tiles.put(key, tile);
+            ownedTiles.add(key);
+        } else if (ownedTiles.add(key)) {
+            tile = tile.clone();
+            tiles.put(key, tile);
+        }
+        lastKey = key;
+        lastTile = tile;
+        return tile;
+    }
+
+    private static boolean isEmpty(long[] tile) {
+        for (long row : tile) {
+            if (row != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,458 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * A board stored as a sparse map of 64x64 tiles of bit rows, stepped with bit-parallel adders
+ * <p>
+ * Tile (tx, ty) covers x in [64 tx, 64 tx + 64) and y in [64 ty, 64 ty + 64). Row r of a tile holds local y = r,
+ * with bit i for local x = i. Tiles are created when activity reaches their edge and dropped once they are empty.
+ * <p>
+ * Generations are persistent: evolving builds a new tile map that reuses every tile that did not change, and a map
+ * or tile handed out by {@link #getLiveCells()} is never modified again, edits copying it first. Readers can so keep
+ * a generation, as a {@link TileCellSet}, while later ones are computed, without the board copying any cells.
+ */
+public class TiledBoard implements LifeEngine {
+    static final int TILE_BITS = 6;
+    static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final long[] EMPTY_TILE = new long[TILE_SIZE];
+    private static final int CONWAY_BIRTHS = Rule.CONWAY.getBirthCounts();
+    private static final int CONWAY_SURVIVALS = Rule.CONWAY.getSurvivalCounts();
+
+    private HashMap<Long, long[]> tiles;
+    private boolean tilesShared = false; // tiles has been handed out, so edits must copy it
+    private HashSet<Long> ownedTiles = new HashSet<>(); // keys of tiles never handed out, safe to edit or recycle
+    private final ArrayDeque<long[]> spareTiles = new ArrayDeque<>(); // recycled row arrays
+    private long genCount;
+    private long computeTime = 0;
+    private Rule rule = Rule.CONWAY;
+
+    /**
+     * Initialize a blank board
+     */
+    public TiledBoard() {
+        tiles = new HashMap<>();
+        genCount = 0;
+    }
+
+    @Override
+    public boolean getCellState(Coordinate c) {
+        long[] tile = tiles.get(tileKey(c.x(), c.y()));
+        return tile != null && (tile[(int) (c.y() & (TILE_SIZE - 1))] >>> (c.x() & (TILE_SIZE - 1)) & 1) != 0;
+    }
+
+    @Override
+    public void setCellState(Coordinate c, boolean state) {
+        long key = tileKey(c.x(), c.y());
+        long[] tile = tiles.get(key);
+        int row = (int) (c.y() & (TILE_SIZE - 1));
+        long bit = 1L << (c.x() & (TILE_SIZE - 1));
+        if ((tile != null && (tile[row] & bit) != 0) == state) {
+            return;
+        }
+        tile = editableTile(key);
+        tile[row] ^= bit;
+        if (!state && isEmpty(tile)) {
+            tiles.remove(key);
+            ownedTiles.remove(key);
+            spareTiles.push(tile);
+        }
+    }
+
+    @Override
+    public void addCells(long[] keys, int count) {
+        // patterns arrive row by row, so consecutive cells usually share a tile
+        long lastKey = 0;
+        long[] tile = null;
+        for (int i = 0; i < count; i++) {
+            long x = Coordinate.unpackX(keys[i]), y = Coordinate.unpackY(keys[i]);
+            long key = tileKey(x, y);
+            if (tile == null || key != lastKey) {
+                tile = editableTile(key);
+                lastKey = key;
+            }
+            tile[(int) (y & (TILE_SIZE - 1))] |= 1L << (x & (TILE_SIZE - 1));
+        }
+    }
+
+    /**
+     * Getter for currently living cells
+     *
+     * @return the current generation, read-only and unaffected by later changes to the board
+     */
+    @Override
+    public CellSet getLiveCells() {
+        tilesShared = true;
+        ownedTiles.clear();
+        return new TileCellSet(tiles);
+    }
+
+    @Override
+    public long getPopulation() {
+        long population = 0;
+        for (long[] tile : tiles.values()) {
+            for (long row : tile) {
+                population += Long.bitCount(row);
+            }
+        }
+        return population;
+    }
+
+    @Override
+    public CellSet copyLiveCells() {
+        return getLiveCells(); // already independent of the board
+    }
+
+    @Override
+    public long getGenCount() {
+        return genCount;
+    }
+
+    @Override
+    public void setGenCount(long genCount) {
+        this.genCount = genCount;
+    }
+
+    @Override
+    public long getComputeTime() {
+        return computeTime;
+    }
+
+    @Override
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public void setRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Getter for the number of allocated tiles
+     *
+     * @return tile count
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    @Override
+    public CellSet evolve() {
+        long startTime = System.nanoTime();
+        CellSet delta = new CellSet();
+        step(delta);
+        computeTime = System.nanoTime() - startTime;
+        return delta;
+    }
+
+    /**
+     * Advance any number of generations without collecting their changes
+     *
+     * @param generations number of generations to advance
+     */
+    @Override
+    public void advance(long generations) {
+        long startTime = System.nanoTime();
+        for (long g = 0; g < generations; g++) {
+            step(null);
+        }
+        computeTime = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Compute the next generation of every active tile and make it the current one
+     *
+     * @param delta receives the cells whose state changed, or null if they are not wanted
+     */
+    private void step(CellSet delta) {
+        // every existing tile, plus empty neighbors that live cells on an edge could spill into
+        HashMap<Long, long[]> active = new HashMap<>(tiles);
+        for (Map.Entry<Long, long[]> entry : tiles.entrySet()) {
+            long tx = Coordinate.unpackX(entry.getKey()), ty = Coordinate.unpackY(entry.getKey());
+            long[] tile = entry.getValue();
+            long columns = 0; // bit i is set if any cell in column i is alive
+            for (long row : tile) {
+                columns |= row;
+            }
+            boolean w = (columns & 1L) != 0, e = columns < 0;
+            boolean s = tile[0] != 0, n = tile[TILE_SIZE - 1] != 0;
+            if (n) wake(active, tx, ty + 1);
+            if (s) wake(active, tx, ty - 1);
+            if (w) wake(active, tx - 1, ty);
+            if (e) wake(active, tx + 1, ty);
+            if ((tile[TILE_SIZE - 1] & 1L) != 0) wake(active, tx - 1, ty + 1);
+            if (tile[TILE_SIZE - 1] < 0) wake(active, tx + 1, ty + 1);
+            if ((tile[0] & 1L) != 0) wake(active, tx - 1, ty - 1);
+            if (tile[0] < 0) wake(active, tx + 1, ty - 1);
+        }
+
+        HashMap<Long, long[]> next = new HashMap<>(active.size() * 2);
+        HashSet<Long> nextOwned = new HashSet<>(active.size() * 2);
+        for (Map.Entry<Long, long[]> entry : active.entrySet()) {
+            long key = entry.getKey();
+            long tx = Coordinate.unpackX(key), ty = Coordinate.unpackY(key);
+            long[] tile = entry.getValue();
+            long[] out = newTile();
+            boolean any = step(tile,
+                    neighbor(tx, ty + 1), neighbor(tx, ty - 1), neighbor(tx - 1, ty), neighbor(tx + 1, ty),
+                    neighbor(tx - 1, ty + 1), neighbor(tx + 1, ty + 1), neighbor(tx - 1, ty - 1), neighbor(tx + 1, ty - 1),
+                    rule, out);
+            if (any && Arrays.equals(out, tile)) {
+                // unchanged: the next generation shares the tile
+                next.put(key, tile);
+                spareTiles.push(out);
+                continue;
+            }
+            if (delta != null) {
+                long originX = tx << TILE_BITS, originY = ty << TILE_BITS;
+                for (int r = 0; r < TILE_SIZE; r++) {
+                    addBits(delta, tile[r] ^ out[r], originX, originY + r);
+                }
+            }
+            if (any) {
+                next.put(key, out);
+                nextOwned.add(key);
+            } else {
+                spareTiles.push(out);
+            }
+        }
+        // tiles nobody else has seen can be reused once they are replaced; shared ones are left to the collector
+        for (Long key : ownedTiles) {
+            long[] tile = tiles.get(key);
+            if (next.get(key) == tile) {
+                nextOwned.add(key);
+            } else {
+                spareTiles.push(tile);
+            }
+        }
+        tiles = next;
+        tilesShared = false;
+        ownedTiles = nextOwned;
+        genCount++;
+    }
+
+    @Override
+    public CellSet clear() {
+        CellSet delta = getLiveCells().copy(); // callers may add to it, which a tile view does not allow
+        tiles = new HashMap<>();
+        tilesShared = false;
+        spareTiles.clear();
+        genCount = 0;
+        return delta;
+    }
+
+    /**
+     * Compute one generation of a tile
+     *
+     * @param c    the tile
+     * @param n    tile to the north (y + 1)
+     * @param s    tile to the south
+     * @param w    tile to the west (x - 1)
+     * @param e    tile to the east
+     * @param nw   tile to the north-west
+     * @param ne   tile to the north-east
+     * @param sw   tile to the south-west
+     * @param se   tile to the south-east
+     * @param rule the rule to step by
+     * @param out  receives the next generation of the tile
+     * @return true if the next generation has any live cell
+     */
+    static boolean step(long[] c, long[] n, long[] s, long[] w, long[] e,
+                        long[] nw, long[] ne, long[] sw, long[] se, Rule rule, long[] out) {
+        final int last = TILE_SIZE - 1;
+        boolean totalistic = rule.isTotalistic();
+        int births = rule.getBirthCounts(), survivals = rule.getSurvivalCounts();
+        long any = 0;
+        // rows below, at and above the current one, each with the matching rows of the west and east tiles
+        long below = s[last], belowW = sw[last], belowE = se[last];
+        long mid = c[0], midW = w[0], midE = e[0];
+        for (int r = 0; r < TILE_SIZE; r++) {
+            long above, aboveW, aboveE;
+            if (r < last) {
+                above = c[r + 1];
+                aboveW = w[r + 1];
+                aboveE = e[r + 1];
+            } else {
+                above = n[0];
+                aboveW = nw[0];
+                aboveE = ne[0];
+            }
+            long a1 = (above << 1) | (aboveW >>> last), a2 = above, a3 = (above >>> 1) | (aboveE << last);
+            long m1 = (mid << 1) | (midW >>> last), m2 = (mid >>> 1) | (midE << last);
+            long b1 = (below << 1) | (belowW >>> last), b2 = below, b3 = (below >>> 1) | (belowE << last);
+            long next = totalistic
+                    ? totalistic(births, survivals, mid, a1, a2, a3, m1, m2, b1, b2, b3)
+                    : isotropic(rule, mid, a1, a2, a3, m1, m2, b1, b2, b3);
+            out[r] = next;
+            any |= next;
+            below = mid;
+            belowW = midW;
+            belowE = midE;
+            mid = above;
+            midW = aboveW;
+            midE = aboveE;
+        }
+        return any != 0;
+    }
+
+    /**
+     * Apply a totalistic rule to 64 cells at once
+     * <p>
+     * The eight neighbor words are summed with bit-sliced full adders into a binary count per bit position.
+     *
+     * @param births    bit n set if a dead cell with n live neighbors is born
+     * @param survivals bit n set if a live cell with n live neighbors survives
+     * @param alive     current states
+     * @param a1        neighbor words, each aligned so that bit i holds a neighbor of cell i: a above, m level, b below,
+     *                  numbered from the west
+     * @return next states
+     */
+    static long totalistic(int births, int survivals, long alive,
+                                   long a1, long a2, long a3, long m1, long m2, long b1, long b2, long b3) {
+        // row above and row below: 3 bits each -> ones + 2 * twos
+        long aOnes = a1 ^ a2 ^ a3, aTwos = (a1 & a2) | (a3 & (a1 ^ a2));
+        long bOnes = b1 ^ b2 ^ b3, bTwos = (b1 & b2) | (b3 & (b1 ^ b2));
+        // middle row: 2 bits
+        long mOnes = m1 ^ m2, mTwos = m1 & m2;
+        // combine the ones column, carrying into the twos column
+        long ones = aOnes ^ bOnes ^ mOnes;
+        long carry = (aOnes & bOnes) | (mOnes & (aOnes ^ bOnes));
+        // twos column holds four bits: aTwos, bTwos, mTwos and the carry
+        long t = aTwos ^ bTwos ^ mTwos, tCarry = (aTwos & bTwos) | (mTwos & (aTwos ^ bTwos));
+        long twos = t ^ carry, uCarry = t & carry;
+        long fours = tCarry ^ uCarry, eights = tCarry & uCarry;
+        if (births == CONWAY_BIRTHS && survivals == CONWAY_SURVIVALS) {
+            // count is ones + 2 twos + 4 fours + 8 eights; live next iff count == 3, or count == 2 and alive
+            return twos & ~fours & ~eights & (ones | alive);
+        }
+        long born = 0, survive = 0;
+        for (int count = 0; count <= 8; count++) {
+            if (((births | survivals) >>> count & 1) != 0) {
+                // bit i set where cell i has exactly this many live neighbors
+                long equal = ((count & 1) != 0 ? ones : ~ones) & ((count & 2) != 0 ? twos : ~twos)
+                        & ((count & 4) != 0 ? fours : ~fours) & ((count & 8) != 0 ? eights : ~eights);
+                born |= (births >>> count & 1) != 0 ? equal : 0;
+                survive |= (survivals >>> count & 1) != 0 ? equal : 0;
+            }
+        }
+        return (born & ~alive) | (survive & alive);
+    }
+
+    /**
+     * Apply a non-totalistic rule to 64 cells, looking up each cell's neighborhood in the rule table
+     *
+     * @param rule  the rule
+     * @param alive current states
+     * @param a1    neighbor words, as for {@link #totalistic}
+     * @return next states
+     */
+    static long isotropic(Rule rule, long alive,
+                                  long a1, long a2, long a3, long m1, long m2, long b1, long b2, long b3) {
+        long next = 0;
+        // without B0, only cells with something alive in their neighborhood can be alive next
+        for (long candidates = alive | a1 | a2 | a3 | m1 | m2 | b1 | b2 | b3; candidates != 0; candidates &= candidates - 1) {
+            int i = Long.numberOfTrailingZeros(candidates);
+            int mask = (int) (b1 >>> i & 1) | (int) (b2 >>> i & 1) << 1 | (int) (b3 >>> i & 1) << 2
+                    | (int) (m1 >>> i & 1) << 3 | (int) (alive >>> i & 1) << 4 | (int) (m2 >>> i & 1) << 5
+                    | (int) (a1 >>> i & 1) << 6 | (int) (a2 >>> i & 1) << 7 | (int) (a3 >>> i & 1) << 8;
+            if (rule.next(mask)) {
+                next |= 1L << i;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Make sure a tile takes part in the next step, even if it is empty now
+     */
+    private void wake(HashMap<Long, long[]> active, long tx, long ty) {
+        active.putIfAbsent(Coordinate.pack(tx, ty), EMPTY_TILE);
+    }
+
+    /**
+     * Get a tile that may be changed in place, copying the tile map and the tile if they have been handed out
+     *
+     * @param key packed tile coordinates
+     * @return the tile, created empty if it was not allocated
+     */
+    private long[] editableTile(long key) {
+        if (tilesShared) {
+            tiles = new HashMap<>(tiles);
+            tilesShared = false;
+        }
+        long[] tile = tiles.get(key);
+        if (tile == null) {
+            tile = newTile();
+        } else if (!ownedTiles.contains(key)) {
+            tile = tile.clone();
+        } else {
+            return tile;
+        }
+        tiles.put(key, tile);
+        ownedTiles.add(key);
+        return tile;
+    }
+
+    /**
+     * Getter for a tile of the current generation
+     *
+     * @return the tile, or an all-zero tile if it is not allocated
+     */
+    private long[] neighbor(long tx, long ty) {
+        long[] tile = tiles.get(Coordinate.pack(tx, ty));
+        return tile == null ? EMPTY_TILE : tile;
+    }
+
+    /**
+     * Get a zeroed row array, reusing a freed one when possible
+     *
+     * @return an empty tile
+     */
+    private long[] newTile() {
+        long[] tile = spareTiles.poll();
+        if (tile == null) {
+            return new long[TILE_SIZE];
+        }
+        Arrays.fill(tile, 0);
+        return tile;
+    }
+
+    /**
+     * Add the cells of one bit row to a set
+     *
+     * @param cells   the set to fill
+     * @param bits    the row
+     * @param originX x-coordinate of bit 0
+     * @param y       y-coordinate of the row
+     */
+    static void addBits(CellSet cells, long bits, long originX, long y) {
+        while (bits != 0) {
+            cells.add(Coordinate.pack(originX + Long.numberOfTrailingZeros(bits), y));
+            bits &= bits - 1;
+        }
+    }
+
+    /**
+     * Check whether a tile has no live cells
+     */
+    private static boolean isEmpty(long[] tile) {
+        for (long row : tile) {
+            if (row != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Key of the tile containing a cell
+     *
+     * @param x x-coordinate of the cell
+     * @param y y-coordinate of the cell
+     * @return packed tile coordinates
+     */
+    static long tileKey(long x, long y) {
+        return Coordinate.pack(x >> TILE_BITS, y >> TILE_BITS);
+    }
+}
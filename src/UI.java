@@ -1,14 +1,21 @@
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.text.JTextComponent;
 import java.awt.*;
 import java.awt.event.KeyEvent;
-import java.util.HashSet;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Hashtable;
 
 /**
  * Manage UI components
  */
 public class UI extends JFrame {
-    private Board board;
-    private ButtonGrid buttonGrid;
+    private Simulation simulation;
+    private CellCanvas canvas;
 
     /**
      * Initialize the JGoL UI, create a board of a user-specified size
@@ -19,28 +26,25 @@ public class UI extends JFrame {
         setPreferredSize(Consts.STARTING_SIZE);
         setLayout(new BorderLayout());
 
-        board = new Board();
-        buttonGrid = new ButtonGrid(board);
+        simulation = new Simulation(new Board());
+        simulation.getMetrics().register();
+        canvas = new CellCanvas(simulation);
 
         // board, with extra navigation (scroll) buttons
         JPanel gameBoard = new JPanel(new BorderLayout());
-        // hide buttons that don't currently fit on screen because of zoom setting
-        JScrollPane buttonGridOverflow = new JScrollPane(buttonGrid, JScrollPane.VERTICAL_SCROLLBAR_NEVER, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-        buttonGridOverflow.getHorizontalScrollBar().setUnitIncrement(0);
-        buttonGridOverflow.getVerticalScrollBar().setUnitIncrement(0);
-        gameBoard.add(buttonGridOverflow, BorderLayout.CENTER);
+        gameBoard.add(canvas, BorderLayout.CENTER);
         // navigation buttons
         JButton upButton = new JButton("⏫");
-        upButton.addActionListener(ae -> buttonGrid.updateTransform(Consts.T_UP));
+        upButton.addActionListener(ae -> canvas.updateTransform(Consts.T_UP));
         gameBoard.add(upButton, BorderLayout.NORTH);
         JButton downButton = new JButton("⏬");
-        downButton.addActionListener(ae -> buttonGrid.updateTransform(Consts.T_DOWN));
+        downButton.addActionListener(ae -> canvas.updateTransform(Consts.T_DOWN));
         gameBoard.add(downButton, BorderLayout.SOUTH);
         JButton rightButton = new JButton("⏩");
-        rightButton.addActionListener(ae -> buttonGrid.updateTransform(Consts.T_RIGHT));
+        rightButton.addActionListener(ae -> canvas.updateTransform(Consts.T_RIGHT));
         gameBoard.add(rightButton, BorderLayout.LINE_END);
         JButton leftButton = new JButton("⏪");
-        leftButton.addActionListener(ae -> buttonGrid.updateTransform(Consts.T_LEFT));
+        leftButton.addActionListener(ae -> canvas.updateTransform(Consts.T_LEFT));
         gameBoard.add(leftButton, BorderLayout.LINE_START);
         add(gameBoard, BorderLayout.CENTER);
 
@@ -49,33 +53,70 @@ public class UI extends JFrame {
 
         pack();
 
+        // closing the window exits at once, so give a recording under way the chance to write its last frames first
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                try {
+                    simulation.stopRecording(Consts.RECORDING_CLOSE_WAIT);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        // render loop: show the newest snapshot at display rate, skipping any generations in between
+        new Timer(Consts.FRAME_DELAY, ae -> {
+            Snapshot snapshot = simulation.takeSnapshot();
+            if (snapshot != null) {
+                canvas.show(snapshot);
+                controls.uiRefresh(snapshot);
+            }
+        }).start();
+
         // WASD keys for infinite scroll
         // pressing Z resets to the home coordinate
+        // other keys, keys typed into a text field such as the rule box, and keys typed into a dialog such as the
+        // generation prompt go to the component with the focus
         KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(ke -> {
-            if (ke.getID() == KeyEvent.KEY_TYPED) {
-                char code = Character.toLowerCase(ke.getKeyChar());
-                switch (code) {
-                    case 'w':
-                        buttonGrid.updateTransform(Consts.T_UP);
-                        break;
-                    case 's':
-                        buttonGrid.updateTransform(Consts.T_DOWN);
-                        break;
-                    case 'd':
-                        buttonGrid.updateTransform(Consts.T_RIGHT);
-                        break;
-                    case 'a':
-                        buttonGrid.updateTransform(Consts.T_LEFT);
-                        break;
-                    case 'z':
-                        buttonGrid.updateTransform(Consts.T_ZERO);
-                        break;
-                }
+            KeyboardFocusManager manager = KeyboardFocusManager.getCurrentKeyboardFocusManager();
+            if (ke.getID() != KeyEvent.KEY_TYPED || manager.getFocusedWindow() != this
+                    || takesText(manager.getFocusOwner())) {
+                return false;
+            }
+            switch (Character.toLowerCase(ke.getKeyChar())) {
+                case 'w':
+                    canvas.updateTransform(Consts.T_UP);
+                    return true;
+                case 's':
+                    canvas.updateTransform(Consts.T_DOWN);
+                    return true;
+                case 'd':
+                    canvas.updateTransform(Consts.T_RIGHT);
+                    return true;
+                case 'a':
+                    canvas.updateTransform(Consts.T_LEFT);
+                    return true;
+                case 'z':
+                    canvas.updateTransform(Consts.T_ZERO);
+                    return true;
+                default:
+                    return false;
             }
-            return true;
         });
     }
 
+    /**
+     * Check whether keys typed into a component are text rather than commands
+     *
+     * @param focusOwner the component with the keyboard focus, or null
+     * @return true for a text field, including the editor of an editable combo box
+     */
+    private static boolean takesText(Component focusOwner) {
+        return focusOwner instanceof JTextComponent
+                || SwingUtilities.getAncestorOfClass(JComboBox.class, focusOwner) != null;
+    }
+
     /**
      * UI control elements
      */
@@ -83,7 +124,18 @@ public class UI extends JFrame {
         private JButton autoButton;
         private JLabel genCounter;
         private JLabel computeTimeLabel;
-        private boolean autoEnabled = false;
+        private JLabel genRateLabel;
+        private JComboBox<String> ruleBox;
+        private JComboBox<String> engineBox;
+        private JLabel statsLabel;
+        private JSlider timelineSlider;
+        private JLabel timelineEndLabel;
+        private boolean updatingTimeline = false; // moving the slider to follow the board, not to seek
+        private boolean updatingRuleBox = false; // showing the board's rule in the rule box, not choosing one
+        private boolean recording = false;
+        private int engineIndex = 0; // the engine in use, as an index in Consts.ENGINE_NAMES
+        private long nextStatsTime = 0;
+        private Rule shownRule = Rule.CONWAY;
         private int autoDelay = 700;
 
         /**
@@ -101,14 +153,27 @@ public class UI extends JFrame {
             // display compute time for previous iteration
             computeTimeLabel = new JLabel();
             countersPanel.add(computeTimeLabel);
+            // display simulation speed while autoevolving
+            genRateLabel = new JLabel();
+            countersPanel.add(genRateLabel);
             add(countersPanel);
 
             // main control buttons
             JPanel controlsPanel = new JPanel(new FlowLayout());
             // On button click, evolve the board once
             JButton nextGen = new JButton("Evolve state");
-            nextGen.addActionListener(ae -> evolveBoard());
+            nextGen.addActionListener(ae -> simulation.step());
             controlsPanel.add(nextGen);
+            // On button click, go back a generation, or to any generation still in the history
+            JButton previousGen = new JButton("Step back");
+            previousGen.addActionListener(ae -> {
+                simulation.stepBack();
+                updateAutoButtonText();
+            });
+            controlsPanel.add(previousGen);
+            JButton goToGen = new JButton("Go to generation");
+            goToGen.addActionListener(ae -> goToGeneration());
+            controlsPanel.add(goToGen);
             // On button click, clear the board
             JButton clear = new JButton("Clear board");
             clear.addActionListener(ae -> clearBoard());
@@ -116,29 +181,60 @@ public class UI extends JFrame {
             // On button click, start or stop autoevolve
             autoButton = new JButton();
             autoButton.addActionListener(ae -> {
-                autoEnabled = !autoEnabled;
-                if (autoEnabled) {
-                    Thread autoThread = new Thread(() -> {
-                        while (autoEnabled) {
-                            SwingUtilities.invokeLater(this::evolveBoard);
-                            try {
-                                // "faster" refresh is numerically lower sleep time, so flip here
-                                Thread.sleep(Consts.AUTO_DELAY_MAX - (autoDelay - Consts.AUTO_DELAY_MIN));
-                            } catch (InterruptedException ex) {
-                                ex.printStackTrace();
-                            }
-                        }
-                    });
-                    autoThread.start();
-                }
+                simulation.setRunning(!simulation.isRunning());
                 updateAutoButtonText();
             });
             controlsPanel.add(autoButton);
+            // evolve as fast as possible, ignoring the speed slider
+            JCheckBox maxSpeedBox = new JCheckBox("As fast as possible");
+            maxSpeedBox.addActionListener(ae -> simulation.setMaxSpeed(maxSpeedBox.isSelected()));
+            controlsPanel.add(maxSpeedBox);
+            // read and write RLE or Macrocell pattern files
+            JButton loadButton = new JButton("Load pattern");
+            loadButton.addActionListener(ae -> loadPattern());
+            controlsPanel.add(loadButton);
+            JButton saveButton = new JButton("Save pattern");
+            saveButton.addActionListener(ae -> savePattern());
+            controlsPanel.add(saveButton);
+            // record what is on screen, generation by generation, to an animated GIF or PNG frames
+            JButton recordButton = new JButton("Record");
+            recordButton.addActionListener(ae -> toggleRecording(recordButton));
+            controlsPanel.add(recordButton);
             JButton homeButton = new JButton("Home");
-            homeButton.addActionListener(ae -> buttonGrid.updateTransform(Consts.T_ZERO));
+            homeButton.addActionListener(ae -> canvas.updateTransform(Consts.T_ZERO));
             controlsPanel.add(homeButton);
+            // switch simulation engine, carrying the live cells over
+            controlsPanel.add(new JLabel("Engine:"));
+            engineBox = new JComboBox<>(Consts.ENGINE_NAMES);
+            engineBox.addActionListener(ae -> switchEngine(engineBox.getSelectedIndex()));
+            controlsPanel.add(engineBox);
+            // pick a rule from the list or type one in B/S notation
+            controlsPanel.add(new JLabel("Rule:"));
+            ruleBox = new JComboBox<>(Consts.RULE_PRESETS);
+            ruleBox.setEditable(true);
+            ruleBox.addActionListener(ae -> {
+                if (!updatingRuleBox) {
+                    changeRule((String) ruleBox.getSelectedItem());
+                }
+            });
+            controlsPanel.add(ruleBox);
+            // latency percentiles and the latest generation's numbers, hidden until asked for
+            JCheckBox statsBox = new JCheckBox("Show stats");
+            controlsPanel.add(statsBox);
             add(controlsPanel);
 
+            JPanel statsPanel = new JPanel(new FlowLayout());
+            statsLabel = new JLabel();
+            statsPanel.add(statsLabel);
+            statsPanel.setVisible(false);
+            statsBox.addActionListener(ae -> {
+                statsPanel.setVisible(statsBox.isSelected());
+                nextStatsTime = 0;
+                updateStats();
+                revalidate();
+            });
+            add(statsPanel);
+
             // sliders
             JPanel slidersPanel = new JPanel(new FlowLayout());
             // change autoevolve speed
@@ -147,76 +243,402 @@ public class UI extends JFrame {
             autoSpeedSlider.setMinorTickSpacing(50);
             autoSpeedSlider.setMajorTickSpacing(200);
             autoSpeedSlider.setPaintTicks(true);
-            autoSpeedSlider.addChangeListener(ce -> autoDelay = ((JSlider) ce.getSource()).getValue());
+            autoSpeedSlider.addChangeListener(ce -> {
+                autoDelay = ((JSlider) ce.getSource()).getValue();
+                updateAutoDelay();
+            });
             slidersPanel.add(autoSpeedSlider);
-            // change button size, aka zoom
+            // change cell size, aka zoom; below ZOOM_MIN each step halves the scale, down to one pixel for
+            // 2^MAX_LEVEL cells a side
             slidersPanel.add(new JLabel("Zoom:"));
-            JSlider zoomSlider = new JSlider(JSlider.HORIZONTAL, Consts.ZOOM_MIN, Consts.ZOOM_MAX, Consts.INITIAL_BUTTON_SIZE);
+            JSlider zoomSlider = new JSlider(JSlider.HORIZONTAL, Consts.ZOOM_MIN - DensityPyramid.MAX_LEVEL,
+                    Consts.ZOOM_MAX, Consts.INITIAL_CELL_SIZE);
             zoomSlider.setMinorTickSpacing(1);
-            zoomSlider.setMajorTickSpacing(5);
             zoomSlider.setPaintTicks(true);
+            Hashtable<Integer, JLabel> zoomLabels = new Hashtable<>();
+            for (int size = Consts.ZOOM_MAX; size >= Consts.ZOOM_MIN; size -= 5) {
+                zoomLabels.put(size, new JLabel(String.valueOf(size)));
+            }
+            for (int level = 2; level <= DensityPyramid.MAX_LEVEL; level += 4) {
+                zoomLabels.put(Consts.ZOOM_MIN - level, new JLabel("1/" + (1 << level)));
+            }
+            zoomSlider.setLabelTable(zoomLabels);
             zoomSlider.setPaintLabels(true);
-            zoomSlider.addChangeListener(ce -> buttonGrid.updateButtonSize(((JSlider) ce.getSource()).getValue()));
+            zoomSlider.addChangeListener(ce -> {
+                int zoom = ((JSlider) ce.getSource()).getValue();
+                if (zoom >= Consts.ZOOM_MIN) {
+                    canvas.updateCellSize(zoom);
+                } else {
+                    canvas.updateLevel(Consts.ZOOM_MIN - zoom);
+                }
+            });
             slidersPanel.add(zoomSlider);
             add(slidersPanel);
 
-            uiRefresh();
+            // drag to any generation reached since the last edit, load or rule change; released, the board goes there
+            JPanel timelinePanel = new JPanel(new BorderLayout(5, 0));
+            timelinePanel.add(new JLabel("Timeline:"), BorderLayout.LINE_START);
+            timelineSlider = new JSlider(JSlider.HORIZONTAL, 0, 0, 0);
+            timelineSlider.addChangeListener(ce -> {
+                if (!updatingTimeline && !timelineSlider.getValueIsAdjusting()) {
+                    simulation.seek(timelineGeneration(timelineSlider.getValue()));
+                    updateAutoButtonText();
+                }
+            });
+            timelinePanel.add(timelineSlider, BorderLayout.CENTER);
+            timelineEndLabel = new JLabel();
+            timelinePanel.add(timelineEndLabel, BorderLayout.LINE_END);
+            add(timelinePanel);
+
+            updateAutoDelay();
+            updateAutoButtonText();
+        }
+
+        /**
+         * Pass the autoevolve speed on to the simulation
+         */
+        private void updateAutoDelay() {
+            // "faster" refresh is numerically lower sleep time, so flip here
+            simulation.setDelay(Consts.AUTO_DELAY_MAX - (autoDelay - Consts.AUTO_DELAY_MIN));
+        }
+
+        /**
+         * Synchronize the generation count, and the cycle once one is found, with board
+         *
+         * @param snapshot the newest snapshot of the board
+         */
+        private void updateGenCounter(Snapshot snapshot) {
+            Cycle cycle = snapshot.getCycle();
+            genCounter.setText(String.format("Current generation: %d", snapshot.getGenCount())
+                    + (cycle != null ? " (" + cycle + ")" : ""));
         }
 
         /**
-         * Synchronize the generation count with board
+         * Move the timeline slider to the board's generation and stretch it to the furthest one reached, unless the
+         * user is dragging it
+         *
+         * @param snapshot the newest snapshot of the board
+         */
+        private void updateTimeline(Snapshot snapshot) {
+            if (timelineSlider.getValueIsAdjusting()) {
+                return;
+            }
+            long start = simulation.getTimelineStart(), span = simulation.getTimelineEnd() - start;
+            int steps = (int) Math.min(span, Consts.TIMELINE_STEPS);
+            updatingTimeline = true;
+            timelineSlider.setMaximum(steps);
+            timelineSlider.setValue(span == 0 ? 0 : (int) (Math.max(snapshot.getGenCount() - start, 0) * steps / span));
+            updatingTimeline = false;
+            timelineEndLabel.setText(String.valueOf(start + span));
+        }
+
+        /**
+         * Generation at a timeline slider position
+         *
+         * @param value position from 0 to the slider's maximum
+         * @return the generation
          */
-        private void updateGenCounter() {
-            genCounter.setText(String.format("Current generation: %d", board.getGenCount()));
+        private long timelineGeneration(int value) {
+            long start = simulation.getTimelineStart(), span = simulation.getTimelineEnd() - start;
+            int steps = timelineSlider.getMaximum();
+            return steps == 0 ? start : start + value * span / steps;
         }
 
         /**
          * Display the correct autoevolve state
          */
         private void updateAutoButtonText() {
-            autoButton.setText((autoEnabled ? "Stop" : "Start") + " autoevolve");
+            autoButton.setText((simulation.isRunning() ? "Stop" : "Start") + " autoevolve");
         }
 
         /**
-         * Get the most recent compute time
+         * Get the most recent compute time, both wall-clock and summed over all threads
+         *
+         * @param snapshot the newest snapshot of the board
+         */
+        private void updateComputeTimeLabel(Snapshot snapshot) {
+            computeTimeLabel.setText("Compute time: " + formatTime(snapshot.getComputeTime())
+                    + " (CPU: " + formatTime(snapshot.getCpuTime()) + ")");
+        }
+
+        /**
+         * Show how many generations per second autoevolve achieves
+         *
+         * @param snapshot the newest snapshot of the board
          */
-        private void updateComputeTimeLabel() {
-            computeTimeLabel.setText("Compute time: " + formatTime(board.getComputeTime()));
+        private void updateGenRateLabel(Snapshot snapshot) {
+            genRateLabel.setText(String.format("Speed: %,.1f gen/s", snapshot.getGenRate()));
         }
 
         /**
-         * Evolve the board one time
+         * Show the metrics in the stats panel, a few times a second while it is open
          */
-        private void evolveBoard() {
-            fullRefresh(board.evolve());
+        private void updateStats() {
+            long now = System.nanoTime();
+            if (!statsLabel.isShowing() || now < nextStatsTime) {
+                return;
+            }
+            nextStatsTime = now + Consts.STATS_INTERVAL;
+            Metrics metrics = simulation.getMetrics();
+            long[] box = metrics.getBoundingBox();
+            long allocated = metrics.getAllocatedBytes();
+            statsLabel.setText("<html>" + formatLatency("Evolve", metrics.getEvolveLatency())
+                    + "<br>" + formatLatency("Refresh", metrics.getRefreshLatency())
+                    + "<br>" + formatLatency("Render", metrics.getRenderLatency())
+                    + String.format("<br>Last generation: %,d born, %,d died, population %,d, ", metrics.getBirths(),
+                    metrics.getDeaths(), metrics.getPopulation())
+                    + (allocated < 0 ? "allocation unknown" : String.format("%,.1f kB allocated", allocated / 1e3))
+                    + (box.length == 0 ? "" : String.format(", bounds (%d, %d) to (%d, %d)", box[0], box[1], box[2],
+                    box[3]))
+                    + String.format("<br>Memory: heap %,.1f MB, off-heap %,.1f MB", metrics.getHeapBytes() / 1e6,
+                    metrics.getOffHeapBytes() / 1e6)
+                    + "</html>");
+        }
+
+        /**
+         * Describe one latency histogram on a line
+         *
+         * @param phase   name of the measured phase
+         * @param summary the histogram's summary
+         * @return percentiles and count
+         */
+        private String formatLatency(String phase, Histogram.Summary summary) {
+            return String.format("%s: p50 %s, p90 %s, p99 %s, p99.9 %s, max %s (%,d samples)", phase,
+                    formatTime(summary.getP50()), formatTime(summary.getP90()), formatTime(summary.getP99()),
+                    formatTime(summary.getP999()), formatTime(summary.getMax()), summary.getCount());
         }
 
         /**
          * Clear the board and stop autoevolve if enabled
          */
         private void clearBoard() {
-            autoEnabled = false;
-            buttonGrid.updateTransform(Consts.T_ZERO);
-            fullRefresh(board.clear());
+            simulation.clear();
+            canvas.updateTransform(Consts.T_ZERO);
+            updateAutoButtonText();
+        }
+
+        /**
+         * Ask for a generation and move the board there, back or forward, stopping autoevolve if enabled
+         */
+        private void goToGeneration() {
+            String input = JOptionPane.showInputDialog(UI.this,
+                    String.format("Generation to go to (%d or later):", simulation.getTimelineStart()),
+                    "Go to generation", JOptionPane.QUESTION_MESSAGE);
+            if (input == null || input.trim().isEmpty()) {
+                return;
+            }
+            try {
+                simulation.seek(Long.parseLong(input.trim()));
+                updateAutoButtonText();
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(UI.this, "Not a generation: " + input, "Invalid generation",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        /**
+         * Ask for a pattern file or checkpoint and replace the board with its contents, stopping autoevolve if enabled
+         */
+        private void loadPattern() {
+            JFileChooser chooser = createPatternChooser();
+            if (chooser.showOpenDialog(UI.this) == JFileChooser.APPROVE_OPTION) {
+                simulation.load(chooser.getSelectedFile(), this::showError);
+                canvas.updateTransform(Consts.T_ZERO);
+                updateAutoButtonText();
+            }
+        }
+
+        /**
+         * Ask for a file name and save the live cells there
+         */
+        private void savePattern() {
+            JFileChooser chooser = createPatternChooser();
+            if (chooser.showSaveDialog(UI.this) == JFileChooser.APPROVE_OPTION) {
+                simulation.save(chooser.getSelectedFile(), this::showError);
+            }
+        }
+
+        /**
+         * Ask for a file and start recording the cells on screen to it, or stop the recording under way
+         *
+         * @param button the record button, whose text follows the state
+         */
+        private void toggleRecording(JButton button) {
+            if (recording) {
+                simulation.stopRecording();
+                recording = false;
+                button.setText("Record");
+                return;
+            }
+            JFileChooser chooser = new JFileChooser();
+            chooser.addChoosableFileFilter(new FileNameExtensionFilter("PNG frames", "png"));
+            chooser.setFileFilter(new FileNameExtensionFilter("Animated GIF", "gif"));
+            if (chooser.showSaveDialog(UI.this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            File file = chooser.getSelectedFile();
+            if (file.getName().indexOf('.') < 0) {
+                // no extension typed: take the chosen filter's, a GIF by default
+                boolean png = chooser.getFileFilter() instanceof FileNameExtensionFilter
+                        && ((FileNameExtensionFilter) chooser.getFileFilter()).getExtensions()[0].equals("png");
+                file = new File(file.getPath() + (png ? ".png" : ".gif"));
+            }
+            if (!canvas.record(file, e -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(UI.this,
+                    e.getMessage(), "Recording error", JOptionPane.ERROR_MESSAGE)))) {
+                JOptionPane.showMessageDialog(UI.this, "Zoom in to at least one pixel per cell to record",
+                        "Recording error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            recording = true;
+            button.setText("Stop recording");
+        }
+
+        /**
+         * Create a file chooser for pattern files
+         *
+         * @return a chooser showing RLE and Macrocell files, or checkpoints
+         */
+        private JFileChooser createPatternChooser() {
+            JFileChooser chooser = new JFileChooser();
+            chooser.addChoosableFileFilter(new FileNameExtensionFilter("Checkpoints", "jgol"));
+            chooser.setFileFilter(new FileNameExtensionFilter("RLE and Macrocell patterns", "rle", "mc"));
+            return chooser;
         }
 
         /**
-         * Synchronize the entire UI with board, including buttons
+         * Report a failed pattern load or save; safe to call from any thread
          *
-         * @param delta HashSet of cells whose status has changed
+         * @param e the failure
          */
-        private void fullRefresh(HashSet<Coordinate> delta) {
-            buttonGrid.buttonRefresh(delta);
-            uiRefresh();
+        private void showError(IOException e) {
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(UI.this, e.getMessage(),
+                    "Pattern file error", JOptionPane.ERROR_MESSAGE));
+        }
+
+        /**
+         * Replace the board with a different engine holding the same live cells; the generation count restarts from 0
+         * <p>
+         * The engine is created on a thread of its own, since starting worker processes takes a while; the engine box
+         * is disabled until then, and goes back to the engine in use if creating the new one fails.
+         *
+         * @param index index of the engine in Consts.ENGINE_NAMES
+         */
+        private void switchEngine(int index) {
+            if (index == engineIndex) {
+                return;
+            }
+            engineBox.setEnabled(false);
+            Thread launcher = new Thread(() -> {
+                Throwable failure = null;
+                try {
+                    simulation.replaceEngine(createEngine(index));
+                } catch (UncheckedIOException e) {
+                    failure = e.getCause();
+                } catch (RuntimeException | Error e) {
+                    // a garbled worker handshake or running out of memory for a large engine, say
+                    failure = e;
+                }
+                Throwable f = failure;
+                SwingUtilities.invokeLater(() -> {
+                    // every way out enables the box again, showing the engine actually in use
+                    engineBox.setEnabled(true);
+                    if (f == null) {
+                        engineIndex = index;
+                        return;
+                    }
+                    engineBox.setSelectedIndex(engineIndex);
+                    JOptionPane.showMessageDialog(UI.this, f.getMessage() != null ? f.getMessage() : f.toString(),
+                            "Engine error", JOptionPane.ERROR_MESSAGE);
+                });
+            }, "JGoL engine launch");
+            launcher.setDaemon(true);
+            launcher.start();
+        }
+
+        /**
+         * Switch the board to the rule at the start of a rule box entry
+         *
+         * @param entry a rule, optionally followed by a space and a label
+         */
+        private void changeRule(String entry) {
+            if (entry == null || entry.trim().isEmpty()) {
+                return;
+            }
+            try {
+                simulation.setRule(Rule.parse(entry.trim().split("\\s+")[0]));
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(UI.this, e.getMessage(), "Invalid rule", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        /**
+         * Show the board's rule in the rule box when it changes, as it does when a pattern file names its rule
+         *
+         * @param snapshot the newest snapshot of the board
+         */
+        private void updateRuleBox(Snapshot snapshot) {
+            if (snapshot.getRule().equals(shownRule)) {
+                return;
+            }
+            shownRule = snapshot.getRule();
+            String selected = (String) ruleBox.getSelectedItem();
+            try {
+                if (selected != null && Rule.parse(selected.trim().split("\\s+")[0]).equals(shownRule)) {
+                    return; // the user picked it
+                }
+            } catch (IllegalArgumentException e) {
+                // an invalid entry; replace it with the actual rule
+            }
+            // the board already has this rule, and setting it again would restart the history
+            updatingRuleBox = true;
+            ruleBox.setSelectedItem(shownRule.toString());
+            updatingRuleBox = false;
         }
 
         /**
          * Synchronize all UI controls with board
+         *
+         * @param snapshot the newest snapshot of the board
          */
-        private void uiRefresh() {
-            updateGenCounter();
+        private void uiRefresh(Snapshot snapshot) {
+            updateGenCounter(snapshot);
+            updateTimeline(snapshot);
             updateAutoButtonText();
-            updateComputeTimeLabel();
+            updateComputeTimeLabel(snapshot);
+            updateGenRateLabel(snapshot);
+            updateRuleBox(snapshot);
+            updateStats();
+        }
+    }
+
+    /**
+     * Create an empty engine
+     *
+     * @param index index of the engine in Consts.ENGINE_NAMES
+     * @return the new engine
+     */
+    private static LifeEngine createEngine(int index) {
+        switch (index) {
+            case 1:
+                return new TiledBoard();
+            case 2:
+                return new HashLife();
+            case 3:
+                return new Board(Runtime.getRuntime().availableProcessors());
+            case 4:
+            case 5:
+                return new GridBoard(Consts.GRID_WIDTH, Consts.GRID_HEIGHT, index == 4,
+                        Runtime.getRuntime().availableProcessors());
+            case 6:
+                return new Board(Runtime.getRuntime().availableProcessors(), true);
+            case 7:
+                try {
+                    return DistributedBoard.launch(Consts.SHARD_WORKERS);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            default:
+                return new Board();
         }
     }
 